@@ -9,10 +9,10 @@ package currencyexchangeproblem;
    
    Sourced from the ADA course code files
 */
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
@@ -26,20 +26,56 @@ public class AdjacencyListGraph<E> implements GraphADT<E>
    // from the vertex, for an undirected graph the list holds
    // edge incident from as well as to the vertex
    protected Map<Vertex<E>,Set<Edge<E>>> adjacencyLists;
+   // map holding the same adjacency list as an array for each vertex
+   // together with its index, so traversals need not allocate
+   protected Map<Vertex<E>,IncidenceList> incidenceLists;
+   // arrays holding the vertices and edges in index order
+   protected Vertex<E>[] vertexArray;
+   protected int vertexCount;
+   protected Edge<E>[] edgeArray;
+   protected int edgeCount;
    
    public AdjacencyListGraph()
    {  this(GraphType.UNDIRECTED);
    }
    
    public AdjacencyListGraph(GraphType type)
+   {  this(type, 8, 8);
+   }
+   
+   // creates a graph sized to hold the expected number of vertices and
+   // edges without rehashing or growing its arrays
+   public AdjacencyListGraph(GraphType type, int vertexCapacity,
+      int edgeCapacity)
    {  this.type = type;
-      this.vertices = new HashSet<Vertex<E>>();
-      this.edges = new HashSet<Edge<E>>();
-      this.adjacencyLists = new HashMap<Vertex<E>,Set<Edge<E>>>();
+      int vertexHashCapacity = hashCapacity(vertexCapacity);
+      this.vertices = new HashSet<Vertex<E>>(vertexHashCapacity);
+      this.edges = new HashSet<Edge<E>>(hashCapacity(edgeCapacity));
+      this.adjacencyLists
+         = new HashMap<Vertex<E>,Set<Edge<E>>>(vertexHashCapacity);
+      this.incidenceLists
+         = new HashMap<Vertex<E>,IncidenceList>(vertexHashCapacity);
+      // safe: the arrays only ever hold vertices and edges of this graph
+      @SuppressWarnings("unchecked")
+      Vertex<E>[] vertexArray = (Vertex<E>[])(new Vertex<?>[Math.max(
+         vertexCapacity, 1)]);
+      @SuppressWarnings("unchecked")
+      Edge<E>[] edgeArray = (Edge<E>[])(new Edge<?>[Math.max(edgeCapacity,
+         1)]);
+      this.vertexArray = vertexArray;
+      this.vertexCount = 0;
+      this.edgeArray = edgeArray;
+      this.edgeCount = 0;
+   }
+   
+   // helper method that gives the hash table capacity needed to hold
+   // the specified number of entries at the default load factor
+   private static int hashCapacity(int entries)
+   {  return (int)Math.min((long)entries*4/3+1, Integer.MAX_VALUE);
    }
    
    public <F extends E> AdjacencyListGraph(GraphADT<F> graph)
-   {  this(graph.getType());
+   {  this(graph.getType(), graph.vertexCount(), graph.edgeCount());
       addGraph(graph);
    }
    
@@ -50,9 +86,16 @@ public class AdjacencyListGraph<E> implements GraphADT<E>
 
    // removes all vertices and edges from the graph
    public void clear()
-   {  vertices.clear();
+   {  for (int i=0; i<vertexCount; i++)
+         forgetIncidenceList(vertexArray[i]);
+      vertices.clear();
       edges.clear();
       adjacencyLists.clear();
+      incidenceLists.clear();
+      Arrays.fill(vertexArray, 0, vertexCount, null);
+      vertexCount = 0;
+      Arrays.fill(edgeArray, 0, edgeCount, null);
+      edgeCount = 0;
    }
 
    // returns true if the graph has no vertices nor edges
@@ -84,11 +127,10 @@ public class AdjacencyListGraph<E> implements GraphADT<E>
       }
       // add all the edges to this graph
       for (Edge<F> oldEdge : graph.edgeSet())
-      {  // obtain the one or two end vertices for the old edge
-         Vertex<F>[] oldEndVertices = oldEdge.endVertices();
-         // add an appropriate new edge in this graph
-         addEdge(correspondence.get(oldEndVertices[0]),
-            correspondence.get(oldEndVertices[1]));
+      {  // add an appropriate new edge in this graph between the
+         // correspondents of the one or two end vertices for the old edge
+         addEdge(correspondence.get(oldEdge.endVertex(0)),
+            correspondence.get(oldEdge.endVertex(1)));
       }
    }
    
@@ -103,6 +145,28 @@ public class AdjacencyListGraph<E> implements GraphADT<E>
    private void addVertex(Vertex<E> vertex)
    {  vertices.add(vertex);
       adjacencyLists.put(vertex, new HashSet<Edge<E>>());
+      if (vertexCount == vertexArray.length)
+         vertexArray = Arrays.copyOf(vertexArray, 2*vertexCount);
+      IncidenceList list = new IncidenceList(vertexCount);
+      incidenceLists.put(vertex, list);
+      // cache the incidence list on vertices of this graph, so the
+      // traversal methods need no hash lookup
+      if (vertex instanceof AdjacencyListGraph.AdjacencyListVertex
+         && ((AdjacencyListVertex)vertex).owner()==this)
+         ((AdjacencyListVertex)vertex).incidence = list;
+      vertexArray[vertexCount++] = vertex;
+   }
+   
+   // helper method to clear the cached incidence list of a vertex
+   private void forgetIncidenceList(Vertex<?> vertex)
+   {  if (vertex instanceof AdjacencyListGraph.AdjacencyListVertex)
+      {  // safe: only vertices owned by this graph are changed, and
+         // those are all vertices of E
+         @SuppressWarnings("unchecked")
+         AdjacencyListVertex listVertex = (AdjacencyListVertex)vertex;
+         if (listVertex.owner()==this)
+            listVertex.incidence = null;
+      }
    }
    
    // adds and returns a new undirected edge between two vertices
@@ -115,12 +179,22 @@ public class AdjacencyListGraph<E> implements GraphADT<E>
       if (!containsVertex(vertex1))
          addVertex(vertex1);
       // create the new edge
-      Edge<E> edge = new AdjacencyListEdge(vertex0, vertex1);
+      AdjacencyListEdge edge = new AdjacencyListEdge(vertex0, vertex1);
       edges.add(edge);
+      if (edgeCount == edgeArray.length)
+         edgeArray = Arrays.copyOf(edgeArray, 2*edgeCount);
+      edge.index = edgeCount;
+      edgeArray[edgeCount++] = edge;
       // update the adjacency list for one or both end vertices
       adjacencyLists.get(vertex0).add(edge);
+      incidenceLists.get(vertex0).add(edge, vertex1);
       if (type == GraphType.UNDIRECTED) // add the reverse edge 
-         adjacencyLists.get(vertex1).add(edge);
+      {  adjacencyLists.get(vertex1).add(edge);
+         if (!vertex0.equals(vertex1))
+            incidenceLists.get(vertex1).add(edge, vertex0);
+      }
+      else // note the edge incident to vertex1 for removeVertex
+         incidenceLists.get(vertex1).addIncoming(edge);
       return edge;
    }
    
@@ -129,19 +203,23 @@ public class AdjacencyListGraph<E> implements GraphADT<E>
    {  if (!containsVertex(vertex))
          return false;
       else
-      {  // first remove all incident edges
-         Set<Edge<F>> edgesToRemove = vertex.incidentEdges();
-         Iterator<Edge<F>> edgeIterator = edgesToRemove.iterator();
-         while (edgeIterator.hasNext())
-         {  Edge<F> edgeToRemove = edgeIterator.next();
-            edgeIterator.remove(); // uses iterator to remove edge
-            // remove edge from adjacency lists
-            Vertex<F>[] endVertices = edgeToRemove.endVertices();
-            adjacencyLists.get(endVertices[0]).remove(edgeToRemove);
-            if (type == GraphType.UNDIRECTED) // remove reverse edge 
-               adjacencyLists.get(endVertices[1]).remove(edgeToRemove);
-         } 
-         // remove the vertex
+      {  // first remove all incident edges, including for a directed
+         // graph the edges incident to the vertex from other vertices,
+         // in time proportional to the degree of the vertex
+         IncidenceList list = incidenceLists.get(vertex);
+         while (list.size > 0)
+            removeEdge(list.edges[list.size-1]);
+         while (list.incomingSize > 0)
+            removeEdge(list.incoming[list.incomingSize-1]);
+         forgetIncidenceList(vertex);
+         // remove the vertex, moving the last vertex into its index
+         int index = list.index;
+         Vertex<E> last = vertexArray[--vertexCount];
+         vertexArray[index] = last;
+         vertexArray[vertexCount] = null;
+         incidenceLists.get(last).index = index;
+         incidenceLists.remove(vertex);
+         adjacencyLists.remove(vertex);
          vertices.remove(vertex);
          return true;
       }
@@ -153,11 +231,28 @@ public class AdjacencyListGraph<E> implements GraphADT<E>
          return false;
       else
       {  edges.remove(edge);
+         // remove edge from the edge array, moving the last edge
+         // into its index
+         // safe: the edge is in this graph, so is an edge of E
+         @SuppressWarnings("unchecked")
+         AdjacencyListEdge removed = (AdjacencyListEdge)edge;
+         AdjacencyListEdge last = (AdjacencyListEdge)edgeArray[--edgeCount];
+         edgeArray[removed.index] = last;
+         last.index = removed.index;
+         edgeArray[edgeCount] = null;
+         removed.index = -1;
          // remove edge from adjacency lists of one or both end vertices
-         Vertex<F>[] endVertices = edge.endVertices();
-         adjacencyLists.get(endVertices[0]).remove(edge);
+         Vertex<E> vertex0 = removed.endVertex(0);
+         Vertex<E> vertex1 = removed.endVertex(1);
+         adjacencyLists.get(vertex0).remove(edge);
+         incidenceLists.get(vertex0).remove(removed, vertex1);
          if (type == GraphType.UNDIRECTED) // remove reverse edge 
-            adjacencyLists.get(endVertices[1]).remove(edge);
+         {  adjacencyLists.get(vertex1).remove(edge);
+            if (!vertex0.equals(vertex1))
+               incidenceLists.get(vertex1).remove(removed, vertex0);
+         }
+         else
+            incidenceLists.get(vertex1).removeIncoming(removed);
          return true;
       }
    }
@@ -172,6 +267,39 @@ public class AdjacencyListGraph<E> implements GraphADT<E>
    {  return edges.contains(edge);
    }
    
+   // returns the number of vertices in the graph
+   public int vertexCount()
+   {  return vertexCount;
+   }
+   
+   // returns the number of edges in the graph
+   public int edgeCount()
+   {  return edgeCount;
+   }
+   
+   // returns the vertex at the specified index
+   public Vertex<E> vertexAt(int index)
+   {  if (index<0 || index>=vertexCount)
+         throw new IndexOutOfBoundsException("no vertex at " + index);
+      return vertexArray[index];
+   }
+   
+   // returns the index of the specified vertex, or -1 if not in graph
+   public int indexOf(Vertex<?> vertex)
+   {  IncidenceList list = incidenceLists.get(vertex);
+      if (list==null)
+         return -1;
+      else
+         return list.index;
+   }
+   
+   // returns the edge at the specified index
+   public Edge<E> edgeAt(int index)
+   {  if (index<0 || index>=edgeCount)
+         throw new IndexOutOfBoundsException("no edge at " + index);
+      return edgeArray[index];
+   }
+   
    public String toString()
    {  String output = "Graph:\n";
       for (Vertex<E> vertex : vertices)
@@ -184,6 +312,8 @@ public class AdjacencyListGraph<E> implements GraphADT<E>
    protected class AdjacencyListVertex implements Vertex<E>
    {
       private E element;
+      // incidence list of the vertex while it is in this graph
+      private IncidenceList incidence;
       
       public AdjacencyListVertex(E element)
       {  this.element = element;
@@ -213,8 +343,35 @@ public class AdjacencyListGraph<E> implements GraphADT<E>
       }
       
       // returns whether specified vertex is adjacent to this vertex
+      // in O(1) time using the neighbour counts of its incidence list
       public boolean isAdjacent(Vertex<?> vertex)
-      {  return adjacentVertices().contains(vertex);
+      {  return incidenceLists.get(this).neighbours.containsKey(vertex);
+      }
+      
+      // returns the number of edges connecting with this vertex
+      public int degree()
+      {  return incidenceList().size;
+      }
+      
+      // returns the connecting edge at the specified index
+      public Edge<E> incidentEdgeAt(int index)
+      {  IncidenceList list = incidenceList();
+         if (index<0 || index>=list.size)
+            throw new IndexOutOfBoundsException("no edge at " + index);
+         return list.edges[index];
+      }
+      
+      // returns the cached incidence list, or looks it up if the
+      // vertex is not (or no longer) in this graph
+      private IncidenceList incidenceList()
+      {  if (incidence!=null)
+            return incidence;
+         return incidenceLists.get(this);
+      }
+      
+      // returns the graph that created this vertex
+      private AdjacencyListGraph<E> owner()
+      {  return AdjacencyListGraph.this;
       }
       
       // overridden method which returns a hash code for this vertex
@@ -235,6 +392,8 @@ public class AdjacencyListGraph<E> implements GraphADT<E>
    {
       // for a directed graph edge is from vertex1 to vertex2
       private Vertex<E> vertex1, vertex2;
+      // position of the edge in the edge array of the graph
+      private int index;
       
       public AdjacencyListEdge(Vertex<E> vertex1, Vertex<E> vertex2)
       {  this.vertex1 = vertex1;
@@ -249,6 +408,14 @@ public class AdjacencyListGraph<E> implements GraphADT<E>
          return vertices;
       }
       
+      // returns end vertex 0 or 1 for this edge
+      public Vertex<E> endVertex(int index)
+      {  if (index==0)
+            return vertex1;
+         else
+            return vertex2;
+      }
+      
       // returns the end vertex opposite the specified vertex
       public Vertex<E> oppositeVertex(Vertex<E> vertex)
       {  if (vertex1.equals(vertex))
@@ -261,4 +428,74 @@ public class AdjacencyListGraph<E> implements GraphADT<E>
       {  return "(" + vertex1 + "-" + vertex2 + ")"; 
       }
    }
+
+   // inner class that holds the adjacency list of a vertex as an array
+   // in insertion order, along with its index in the graph and a count
+   // of the edges to each adjacent vertex for constant-time adjacency
+   protected class IncidenceList
+   {
+      private int index;
+      private Edge<E>[] edges;
+      private int size;
+      private Map<Vertex<E>,Integer> neighbours;
+      // for a directed graph the edges incident to the vertex from
+      // other vertices, in any order
+      private Edge<E>[] incoming;
+      private int incomingSize;
+      
+      public IncidenceList(int index)
+      {  this.index = index;
+         // safe: the arrays only ever hold edges of this graph
+         @SuppressWarnings("unchecked")
+         Edge<E>[] edges = (Edge<E>[])(new Edge<?>[4]);
+         @SuppressWarnings("unchecked")
+         Edge<E>[] incoming = (Edge<E>[])(new Edge<?>[0]);
+         this.edges = edges;
+         this.size = 0;
+         this.neighbours = new HashMap<Vertex<E>,Integer>();
+         this.incoming = incoming;
+         this.incomingSize = 0;
+      }
+      
+      // appends an edge incident to the vertex in a directed graph
+      public void addIncoming(Edge<E> edge)
+      {  if (incomingSize == incoming.length)
+            incoming = Arrays.copyOf(incoming, Math.max(4, 2*incomingSize));
+         incoming[incomingSize++] = edge;
+      }
+      
+      // removes an edge incident to the vertex in a directed graph,
+      // moving the last incoming edge into its place
+      public void removeIncoming(Edge<E> edge)
+      {  for (int i=0; i<incomingSize; i++)
+         {  if (incoming[i]==edge)
+            {  incoming[i] = incoming[--incomingSize];
+               incoming[incomingSize] = null;
+               return;
+            }
+         }
+      }
+      
+      // appends an edge leading to the specified adjacent vertex
+      public void add(Edge<E> edge, Vertex<E> adjacent)
+      {  if (size == edges.length)
+            edges = Arrays.copyOf(edges, 2*size);
+         edges[size++] = edge;
+         neighbours.merge(adjacent, 1, Integer::sum);
+      }
+      
+      // removes an edge leading to the specified adjacent vertex,
+      // keeping the remaining edges in insertion order
+      public void remove(Edge<E> edge, Vertex<E> adjacent)
+      {  for (int i=0; i<size; i++)
+         {  if (edges[i]==edge)
+            {  System.arraycopy(edges, i+1, edges, i, size-i-1);
+               edges[--size] = null;
+               if (neighbours.merge(adjacent, -1, Integer::sum)==0)
+                  neighbours.remove(adjacent);
+               return;
+            }
+         }
+      }
+   }
 }
@@ -14,12 +14,52 @@ public class AllPairsFloydWarshall
 {
    public static final double INFINITY = Double.POSITIVE_INFINITY;
    protected static final int NO_VERTEX = -1;
+   // largest number of vertices whose indices fit in a short
+   public static final int MAX_COMPACT_VERTICES = Short.MAX_VALUE;
+   // phase recorded in SolverMetrics.FLOYD_WARSHALL
+   protected static final int BUILD_PHASE = 0;
    protected int n; // number of vertices in the graph
    protected double[][][] d; //d[k][i][i] is weight of path from v_i to v_j
    protected int[][][] p; //p[k][i][i] is penultimate vertex in path
+   // in compact mode only d[0] is kept, and the final distances and
+   // penultimate vertices are held in single float and short matrices
+   protected boolean compact;
+   protected float[][] compactD;
+   protected short[][] compactP;
    
     public AllPairsFloydWarshall(double[][] weights)
-   {  n = weights.length;
+   {  this(weights, false);
+   }
+   
+   // creates the matrices, in compact mode if requested and there are
+   // few enough vertices, where the float and short matrices are
+   // updated in place so each pass moves about a quarter of the memory
+   public AllPairsFloydWarshall(double[][] weights, boolean compact)
+   {  long start = SolverMetrics.ENABLED ? System.nanoTime() : 0;
+      long relaxations;
+      n = weights.length;
+      this.compact = compact && n <= MAX_COMPACT_VERTICES;
+      if (this.compact)
+         relaxations = buildCompact(weights);
+      else
+         relaxations = build(weights);
+      if (SolverMetrics.ENABLED)
+      {  SolverMetrics metrics = SolverMetrics.FLOYD_WARSHALL;
+         metrics.recordPhase(BUILD_PHASE, System.nanoTime()-start);
+         metrics.addPasses(n);
+         metrics.addRelaxations(relaxations);
+         metrics.addEdgeScans((long)n*n*n);
+         if (this.compact) // one float and one short matrix
+            metrics.recordRun(n, (long)n*n*6);
+         else // n distance and n+1 predecessor matrices are allocated
+            metrics.recordRun(n, (long)n*n*8*n + (long)n*n*4*(n+1));
+      }
+   }
+   
+   // builds d[1],...,d[n] and p[0],...,p[n], returning the number of
+   // times a shorter path was found
+   private long build(double[][] weights)
+   {  long relaxations = 0;
       d = new double[n+1][][];
       d[0] = weights;
       // create p[0]
@@ -51,10 +91,84 @@ public class AllPairsFloydWarshall
                else
                {  d[k][i][j] = s;
                   p[k][i][j] = p[k-1][k-1][j];
+                  relaxations++;
                }
             }
          }
       }
+      return relaxations;
+   }
+   
+   // builds the compact float and short matrices in place, returning
+   // the number of times a shorter path was found
+   private long buildCompact(double[][] weights)
+   {  long relaxations = 0;
+      d = new double[][][] {weights};
+      compactD = new float[n][n];
+      compactP = new short[n][n];
+      for (int i=0; i<n; i++)
+      {  for (int j=0; j<n; j++)
+         {  compactD[i][j] = (float)weights[i][j];
+            if (weights[i][j]<INFINITY)
+               compactP[i][j] = (short)i;
+            else
+               compactP[i][j] = NO_VERTEX;
+         }
+      }
+      for (int k=0; k<n; k++)
+      {  float[] rowK = compactD[k];
+         short[] previousK = compactP[k];
+         for (int i=0; i<n; i++)
+         {  float dik = compactD[i][k];
+            if (dik==Float.POSITIVE_INFINITY)
+               continue;
+            float[] rowI = compactD[i];
+            short[] previousI = compactP[i];
+            for (int j=0; j<n; j++)
+            {  float s = dik + rowK[j];
+               if (s < rowI[j])
+               {  rowI[j] = s;
+                  previousI[j] = previousK[j];
+                  relaxations++;
+               }
+            }
+         }
+      }
+      return relaxations;
+   }
+   
+   // returns the weight of the shortest path found from v_i to v_j
+   public double distance(int i, int j)
+   {  if (compact)
+         return compactD[i][j];
+      else
+         return d[n][i][j];
+   }
+   
+   // returns the penultimate vertex on the shortest path found from v_i
+   // to v_j, or NO_VERTEX if there is no path
+   public int previous(int i, int j)
+   {  if (compact)
+         return compactP[i][j];
+      else
+         return p[n][i][j];
+   }
+   
+   // returns the weight of the edge from v_i to v_j in double precision
+   public double weight(int i, int j)
+   {  return d[0][i][j];
+   }
+   
+   // returns whether distances are held in compact float form
+   public boolean isCompact()
+   {  return compact;
+   }
+   
+   // creates the matrices from a table of weights, such as a
+   // SharedRateMatrix, copied into d[0] under its read version so the
+   // copy is consistent even while the table is being written
+   public AllPairsFloydWarshall(WeightTable weights)
+   {  this(weights.copyWeights());
    }
    
    // returns a string representation of matrix d[n] and p[n]
@@ -62,8 +176,8 @@ public class AllPairsFloydWarshall
    {  String output = "Shortest lengths\n";
       for (int i=0; i<n; i++)
       {  for (int j=0; j<n; j++)
-         {  if (d[n][i][j] != INFINITY)
-               output += ("\t" + d[n][i][j]);
+         {  if (distance(i, j) != INFINITY)
+               output += ("\t" + distance(i, j));
             else
                output += "\tinfin";
          }
@@ -72,8 +186,8 @@ public class AllPairsFloydWarshall
       output += "Previous vertices on shortest paths\n";
       for (int i=0; i<n; i++)
       {  for (int j=0; j<n; j++)
-         {  if (p[n][i][j] != NO_VERTEX)
-               output += ("\t" + p[n][i][j]);
+         {  if (previous(i, j) != NO_VERTEX)
+               output += ("\t" + previous(i, j));
             else
                output += "\tnull";
          }
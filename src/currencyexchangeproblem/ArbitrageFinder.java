@@ -1,6 +1,7 @@
 package currencyexchangeproblem;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
@@ -8,75 +9,140 @@ import java.util.TreeMap;
 /**
  * This class:
  * - Runs Floyd-Warshall on a n x n table of weights
- * - Checks diagonals of the distance matrix for arbitrage (negative values)
+ * - Checks diagonals of the distance matrix for arbitrage (negative values), once, in findArbitrage
  * - When arbitrage is found, navigates the path to find the negative cycle (location)
- * - Prints the results
+ * - Prints the results (or streams them with ResultWriter)
  * Path reconstruction:
  * https://gopalcdas.com/2018/02/04/solution-currency-arbitrage/
  * https://gopalcdas.com/2018/01/20/floyd-warshall-algorithm/
  * @author Tamati Rudd 18045626
  */
 public class ArbitrageFinder extends AllPairsFloydWarshall {
+    //Phase recorded in SolverMetrics.FLOYD_WARSHALL
+    protected static final int DETECT_PHASE = 1;
     public Map<Currencies, Double> arbitrageValues;
     public Map<Currencies, String> arbitragePaths;
+    protected int arbitrageCount; //-1 until findArbitrage has run
+    protected int[] arbitrageVertices;
+    protected double[] arbitrageWeights;
 
     /**
      * Construct a new arbitrage finder
      * @param weights table of weights for Floyd-Warshall
      */
     public ArbitrageFinder(double[][] weights) {
-        super(weights);
+        this(weights, false);
+    }
+
+    /**
+     * Construct a new arbitrage finder, optionally in compact mode (float distances, short previous vertices)
+     * In compact mode each negative diagonal is only reported if its cycle is negative in double precision
+     * @param weights table of weights for Floyd-Warshall
+     * @param compact whether to use compact mode, when there are at most MAX_COMPACT_VERTICES currencies
+     */
+    public ArbitrageFinder(double[][] weights, boolean compact) {
+        super(weights, compact);
         arbitrageValues = new TreeMap<>();
         arbitragePaths = new HashMap<>();
+        arbitrageCount = -1;
+    }
+
+    /**
+     * Construct a new arbitrage finder from a consistent copy of a table of weights (e.g. a SharedRateMatrix)
+     * @param weights table of weights for Floyd-Warshall
+     */
+    public ArbitrageFinder(WeightTable weights) {
+        this(weights.copyWeights());
     }
 
     /**
-     * Build a string representation of matrices d[n] and p[n] Checks the
-     * diagonals of the distance (shortest paths) matrix for negative values, as
+     * Check the diagonals of the distance (shortest paths) matrix for negative values, as
      * this indicates negative cycles - arbitrageValues
-     *
+     * The check only runs once; later calls return the first result
+     * @return the number of currencies with arbitrage
+     */
+    public int findArbitrage() {
+        if (arbitrageCount >= 0) {
+            return arbitrageCount;
+        }
+        long start = SolverMetrics.ENABLED ? System.nanoTime() : 0;
+        arbitrageVertices = new int[n];
+        arbitrageWeights = new double[n];
+        arbitrageCount = 0;
+        for (int i = 0; i < n; i++) {
+            checkForArbitrage(i, i);
+        }
+        if (SolverMetrics.ENABLED) {
+            SolverMetrics.FLOYD_WARSHALL.recordPhase(DETECT_PHASE, System.nanoTime() - start);
+        }
+        return arbitrageCount;
+    }
+    
+    /**
+     * @param k which arbitrage found, from 0 to findArbitrage() - 1
+     * @return the currency index (matrix diagonal) of the arbitrage
+     */
+    public int arbitrageVertex(int k) {
+        checkArbitrageIndex(k);
+        return arbitrageVertices[k];
+    }
+    
+    /**
+     * @param k which arbitrage found, from 0 to findArbitrage() - 1
+     * @return the (negative) weight of the arbitrage, checked in double precision in compact mode
+     */
+    public double arbitrageWeight(int k) {
+        checkArbitrageIndex(k);
+        return arbitrageWeights[k];
+    }
+    
+    private void checkArbitrageIndex(int k) {
+        if (k < 0 || k >= findArbitrage()) {
+            throw new IndexOutOfBoundsException("no arbitrage " + k + " of " + arbitrageCount);
+        }
+    }
+
+    /**
+     * Build a string representation of matrices d[n] and p[n]
+     * Also runs findArbitrage, so arbitrageValues is filled in
      * @return string representations of the matrices
      */
     public String toString() {
-        String output = "Shortest path weights\n";
+        findArbitrage();
+        StringBuilder output = new StringBuilder("Shortest path weights\n");
 
         //Add headings above distance matrix
         for (int i = 0; i < n; i++) {
-            output += "\t" + Currencies.values()[i] + "\t\t";
+            output.append('\t').append(Currencies.values()[i]).append("\t\t");
         }
-        output += "\n";
+        output.append('\n');
 
         //Build distance (length/paths) matrix
         for (int i = 0; i < n; i++) {
-            output += (Currencies.values()[i]);
+            output.append(Currencies.values()[i]);
             for (int j = 0; j < n; j++) {
-                if (d[n][i][j] != INFINITY) {
-                    output += ("\t" + d[n][i][j]);
-
-                    //If a diagonal in the matrix, check for arbitrage
-                    if (i == j) {
-                        checkForArbitrage(i, j);
-                    }
+                if (distance(i, j) != INFINITY) {
+                    output.append('\t').append(distance(i, j));
                 } else {
-                    output += "\tinfin";
+                    output.append("\tinfin");
                 }
             }
-            output += "\n";
+            output.append('\n');
         }
 
         //Build r vertices matrix
-        output += "Previous vertices on shortest paths\n";
+        output.append("Previous vertices on shortest paths\n");
         for (int i = 0; i < n; i++) {
             for (int j = 0; j < n; j++) {
-                if (p[n][i][j] != NO_VERTEX) {
-                    output += ("\t" + Currencies.values()[p[n][i][j]]);
+                if (previous(i, j) != NO_VERTEX) {
+                    output.append('\t').append(Currencies.values()[previous(i, j)]);
                 } else {
-                    output += "\tnull";
+                    output.append("\tnull");
                 }
             }
-            output += "\n";
+            output.append('\n');
         }
-        return output;
+        return output.toString();
     }
 
     /**
@@ -86,10 +152,70 @@ public class ArbitrageFinder extends AllPairsFloydWarshall {
      */
     protected void checkForArbitrage(int i, int j) {
         //Check for negative value 
-        if (d[n][i][j] < 0) {
-            arbitrageValues.put(Currencies.values()[i], d[n][i][j]);
-            getArbitragePath(i, j);
+        if (distance(i, j) < 0) {
+            double value = distance(i, j);
+            //Float rounding in compact mode can make a diagonal negative, so re-check the cycle in double precision
+            if (compact) {
+                value = cycleWeight(arbitrageCycle(i));
+                if (!(value < 0)) {
+                    return;
+                }
+            }
+            if (SolverMetrics.ENABLED) {
+                SolverMetrics.FLOYD_WARSHALL.addResultsFound(1);
+            }
+            arbitrageVertices[arbitrageCount] = i;
+            arbitrageWeights[arbitrageCount++] = value;
+            //Only tables of currencies in the Currencies enum can be reported by name
+            if (n <= Currencies.values().length) {
+                arbitrageValues.put(Currencies.values()[i], value);
+                getArbitragePath(i, j);
+            }
+        }
+    }
+    
+    /**
+     * Reconstruct the negative cycle for a matrix diagonal by walking back through the previous vertices from i
+     * The cycle passes through i, unless the walk first loops around a cycle reachable from i (as in getArbitragePath)
+     * @param i matrix row / origin vertex
+     * @return the cycle's vertices in path order (the last leads back to the first), or null if the walk ends
+     */
+    public int[] arbitrageCycle(int i) {
+        int[] walk = new int[n];
+        int[] walkPosition = new int[n];
+        Arrays.fill(walkPosition, -1);
+        int length = 0;
+        int v = i;
+        while (v != NO_VERTEX && walkPosition[v] < 0) {
+            walkPosition[v] = length;
+            walk[length++] = v;
+            v = previous(i, v);
+        }
+        if (v == NO_VERTEX) {
+            return null;
+        }
+        //The walk from v onwards is the cycle, in reverse path order
+        int[] cycle = new int[length - walkPosition[v]];
+        for (int k = 0; k < cycle.length; k++) {
+            cycle[k] = walk[length - 1 - k];
+        }
+        return cycle;
+    }
+    
+    /**
+     * Sum the original double precision weights around a cycle
+     * @param cycle the cycle's vertices in path order, from arbitrageCycle
+     * @return the weight of the cycle, or INFINITY if there is no cycle or it uses a missing edge
+     */
+    public double cycleWeight(int[] cycle) {
+        if (cycle == null) {
+            return INFINITY;
+        }
+        double weight = 0;
+        for (int k = 0; k < cycle.length; k++) {
+            weight += weight(cycle[k], cycle[(k + 1) % cycle.length]);
         }
+        return weight;
     }
     
     /**
@@ -104,7 +230,7 @@ public class ArbitrageFinder extends AllPairsFloydWarshall {
         String path = Currencies.values()[i]+" -> "; //print i
         
         //Get and record the previous vertex from the initial currency
-        int previous = (int) p[n][i][j];
+        int previous = previous(i, j);
         path += Currencies.values()[previous];
         visited.add(previous);
 
@@ -112,7 +238,7 @@ public class ArbitrageFinder extends AllPairsFloydWarshall {
         //r = next vertex in the path
         if (previous != j) {
             //Setup vertex r for the first iteration
-            int r = (int) p[n][i][previous];
+            int r = previous(i, previous);
             while (r != j && findingPath) {
                 //Add to path
                 path += " -> ";
@@ -121,7 +247,7 @@ public class ArbitrageFinder extends AllPairsFloydWarshall {
                 //Check if vertex r has already been visited
                 if (!visited.contains(r)) { //Visit r and begin new iteration
                     visited.add(r);
-                    r = (int) p[n][i][r];
+                    r = previous(i, r);
                 } else { //Negative cycle has been found
                     path += " ... (infinite loop)";
                     findingPath = false;
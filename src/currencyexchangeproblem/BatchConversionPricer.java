@@ -0,0 +1,216 @@
+package currencyexchangeproblem;
+
+import java.util.Arrays;
+
+/**
+ * This class prices many (source, target, amount) conversion requests in one call:
+ * - Requests are grouped by source currency, so Bellman-Ford runs once per distinct source
+ * - If an arbitrage is reachable from a source, only the targets reachable from it (whose best conversion is
+ *   unbounded) are failed; the others' best conversions are unaffected, and are still priced
+ * - Each best conversion path is reconstructed from the last edges into primitive arrays,
+ *   using a visit stamp per currency to detect arbitrage loops in O(1)
+ * - Results are returned as a columnar ConversionBatch
+ * @author Tamati Rudd 18045626
+ */
+public class BatchConversionPricer {
+    protected int vertexCount;
+    protected int[] edgeFrom, edgeTo;
+    protected double[] edgeWeights;
+    protected int edgeCount;
+    protected double[] shortestPaths;
+    protected int[] leastEdges;
+    protected int[] visitStamps; //stamp of the latest path walk to visit each currency
+    protected int stamp;
+    protected int[] outOffsets, outEdges; //edges by start currency, built the first time an arbitrage is found
+    protected boolean[] affected; //currencies reachable from an arbitrage, for the current source
+    
+    /**
+     * Construct a new batch pricer over edge arrays
+     * @param vertexCount the number of currencies
+     * @param edgeFrom index of the start currency of each edge
+     * @param edgeTo index of the end currency of each edge
+     * @param edgeWeights weight of each edge
+     * @param edgeCount the number of edges to use
+     */
+    public BatchConversionPricer(int vertexCount, int[] edgeFrom, int[] edgeTo, double[] edgeWeights, int edgeCount) {
+        this.vertexCount = vertexCount;
+        this.edgeFrom = edgeFrom;
+        this.edgeTo = edgeTo;
+        this.edgeWeights = edgeWeights;
+        this.edgeCount = edgeCount;
+        shortestPaths = new double[vertexCount];
+        leastEdges = new int[vertexCount];
+        visitStamps = new int[vertexCount];
+        stamp = 0;
+    }
+    
+    /**
+     * Construct a new batch pricer over a graph built by WeightedGraphBuilder
+     * @param weightedGraph the weighted graph, whose vertex indexes are the currency indexes
+     */
+    public BatchConversionPricer(WeightedGraph<?> weightedGraph) {
+        this(weightedGraph.vertexCount(), weightedGraph.getEdgeFrom(), weightedGraph.getEdgeTo(),
+                weightedGraph.getEdgeWeights(), weightedGraph.edgeCount());
+    }
+    
+    /**
+     * Price a batch of conversion requests
+     * @param sources the source currency index of each request
+     * @param targets the target currency index of each request
+     * @param amounts the amount of the source currency of each request
+     * @param count the number of requests
+     * @return the results, indexed by request
+     */
+    public ConversionBatch price(int[] sources, int[] targets, double[] amounts, int count) {
+        ConversionBatch batch = new ConversionBatch(count);
+        
+        //Group the requests by source, by sorting (source, request index) keys
+        long[] order = new long[count];
+        for (int r = 0; r < count; r++) {
+            order[r] = ((long) sources[r] << 32) | r;
+        }
+        Arrays.sort(order);
+        
+        int pathEnd = 0;
+        int currentSource = -1;
+        for (int k = 0; k < count; k++) {
+            int r = (int) order[k];
+            int source = sources[r];
+            //Run Bellman-Ford once for each distinct source
+            if (source != currentSource) {
+                currentSource = source;
+                boolean negativeCycle = BestConversionFinder.relaxEdges(vertexCount, edgeFrom, edgeTo, edgeWeights,
+                        edgeCount, source, shortestPaths, leastEdges);
+                if (negativeCycle) {
+                    markAffected();
+                } else if (affected != null) {
+                    Arrays.fill(affected, false);
+                }
+            }
+            batch.pathStarts[r] = pathEnd;
+            int target = targets[r];
+            if (affected != null && affected[target]) {
+                fail(batch, r, ConversionBatch.ARBITRAGE);
+                continue;
+            }
+            
+            //Walk the last edges back from the target, writing the path in reverse
+            int length = walk(batch, pathEnd, source, target);
+            if (length < 0) {
+                fail(batch, r, -length == 1 ? ConversionBatch.UNREACHABLE : ConversionBatch.ARBITRAGE);
+                continue;
+            }
+            reverse(batch.paths, pathEnd, length);
+            pathEnd += length;
+            
+            //Exchange rate to weight = ln(1 / rate), so rate = 1 / e^weight
+            double rate = Math.exp(-shortestPaths[target]);
+            batch.statuses[r] = ConversionBatch.CONVERTED;
+            batch.rates[r] = rate;
+            batch.convertedAmounts[r] = amounts[r] * rate;
+            batch.pathLengths[r] = length;
+        }
+        return batch;
+    }
+    
+    /**
+     * Mark the currencies whose shortest path weight is unbounded: those reachable from an edge that can still be
+     * relaxed, which includes every negative weight closed path reachable from the source
+     * Every other currency's shortest path weight (and last edge) is final, as no path to it passes a closed path
+     */
+    private void markAffected() {
+        if (outOffsets == null) {
+            outOffsets = new int[vertexCount + 1];
+            for (int e = 0; e < edgeCount; e++) {
+                outOffsets[edgeFrom[e] + 1]++;
+            }
+            for (int v = 0; v < vertexCount; v++) {
+                outOffsets[v + 1] += outOffsets[v];
+            }
+            outEdges = new int[edgeCount];
+            int[] next = Arrays.copyOf(outOffsets, vertexCount);
+            for (int e = 0; e < edgeCount; e++) {
+                outEdges[next[edgeFrom[e]]++] = e;
+            }
+            affected = new boolean[vertexCount];
+        }
+        Arrays.fill(affected, false);
+        int[] stack = new int[vertexCount];
+        int top = 0;
+        for (int e = 0; e < edgeCount; e++) {
+            double fromWeight = shortestPaths[edgeFrom[e]];
+            if (fromWeight != Double.MAX_VALUE && fromWeight + edgeWeights[e] < shortestPaths[edgeTo[e]]
+                    && !affected[edgeTo[e]]) {
+                affected[edgeTo[e]] = true;
+                stack[top++] = edgeTo[e];
+            }
+        }
+        while (top > 0) {
+            int u = stack[--top];
+            for (int k = outOffsets[u]; k < outOffsets[u + 1]; k++) {
+                int v = edgeTo[outEdges[k]];
+                if (!affected[v]) {
+                    affected[v] = true;
+                    stack[top++] = v;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Walk the best conversion path back from the target to the source
+     * @param batch the batch, whose paths array receives the path from target to source
+     * @param start where to write the path in the paths array
+     * @param source the source currency
+     * @param target the target currency
+     * @return the number of currencies on the path, -1 if the target is unreachable, or -2 if the walk loops
+     */
+    private int walk(ConversionBatch batch, int start, int source, int target) {
+        stamp++;
+        if (stamp == 0) { //The stamps have wrapped around, so forget every earlier visit
+            Arrays.fill(visitStamps, 0);
+            stamp = 1;
+        }
+        int length = 0;
+        int v = target;
+        while (true) {
+            if (start + length == batch.paths.length) {
+                batch.paths = Arrays.copyOf(batch.paths, 2 * batch.paths.length);
+            }
+            batch.paths[start + length++] = v;
+            if (v == source) {
+                return length;
+            }
+            if (visitStamps[v] == stamp) {
+                return -2;
+            }
+            visitStamps[v] = stamp;
+            int e = leastEdges[v];
+            if (e < 0) {
+                return -1;
+            }
+            v = edgeFrom[e];
+        }
+    }
+    
+    /**
+     * Record a request that could not be converted
+     */
+    private static void fail(ConversionBatch batch, int r, byte status) {
+        batch.statuses[r] = status;
+        batch.rates[r] = Double.NaN;
+        batch.convertedAmounts[r] = Double.NaN;
+        batch.pathLengths[r] = 0;
+    }
+    
+    /**
+     * Reverse part of an array in place
+     */
+    private static void reverse(int[] values, int start, int length) {
+        for (int low = start, high = start + length - 1; low < high; low++, high--) {
+            int value = values[low];
+            values[low] = values[high];
+            values[high] = value;
+        }
+    }
+}
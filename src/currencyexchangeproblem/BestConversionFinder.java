@@ -1,8 +1,7 @@
 package currencyexchangeproblem;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 
 /**
@@ -13,6 +12,10 @@ import java.util.Map;
  * @author Tamati Rudd 18045626
  */
 public class BestConversionFinder<E> {
+    //Phases recorded in SolverMetrics.BELLMAN_FORD
+    protected static final int SETUP_PHASE = 0, RELAX_PHASE = 1, RESULT_PHASE = 2;
+    //Runs of relaxTable over a table in place before it relaxes a copy, when writes keep overlapping
+    protected static final int READ_ATTEMPTS = 3;
     private String[] tableCurrencyOrder;
     
     /**
@@ -34,18 +37,23 @@ public class BestConversionFinder<E> {
         //For each possible weight
         for (int i = 0; i < exchangeRates.length; i++) {
             for (int j = 0; j < exchangeRates[i].length; j++) {
-                //Only include a calculated weight if the conversion isn't 1 (same currency) or 0 (no exchange)
-                if (exchangeRates[i][j] != 0 && exchangeRates[i][j] != 1) {
-                    weights[i][j] = Math.log(1/exchangeRates[i][j]);
-                } else { //Put in a filler weight
-                    weights[i][j] = Double.POSITIVE_INFINITY;
-                }
+                weights[i][j] = RateMatrix.weightFor(i, j, exchangeRates[i][j]);
             }
         }
         
         return weights;
     }
     
+    /**
+     * Calculate the weights of all possible graph edge weights from a primitive exchange rate table
+     * For repeated updates, use a RateMatrix so only changed weights are recomputed
+     * @param exchangeRates n x n exchange rate table to use for calculations
+     * @return n x n table of graph edge weights
+     */
+    public double[][] calculateWeights(double[][] exchangeRates) {
+        return new RateMatrix(exchangeRates).weights();
+    }
+    
     /**
      * Build a map of graph edges to  weights
      * Also creates graph edges based on the table weights
@@ -54,10 +62,13 @@ public class BestConversionFinder<E> {
      * @return the map of edges and weights 
      */
     public Map<Edge<String>, Double> buildWeightsMap(double[][] weightsTable, GraphADT graph) {
-        //Setup data structures
+        //Setup data structures, indexing the vertexes by currency so each lookup is O(1)
         Map<Edge<String>, Double> weightsMap = new HashMap<>();
-        ArrayList<Vertex> vertexes = new ArrayList<>();
-        vertexes.addAll(graph.vertexSet());
+        Map<Object, Vertex> vertexes = new HashMap<>();
+        for (int v = 0; v < graph.vertexCount(); v++) {
+            Vertex vertex = graph.vertexAt(v);
+            vertexes.put(vertex.getUserObject(), vertex);
+        }
         
         //For each possible weight
         for (int i = 0; i < weightsTable.length; i++) {
@@ -69,16 +80,8 @@ public class BestConversionFinder<E> {
                     Currencies columnCurrency = Currencies.values()[j];
 
                     //Get the vertexes for the two currencies involved in an exchange
-                    Iterator<Vertex> it = vertexes.iterator();
-                    Vertex<Currencies> fromCurrency = null, toCurrency = null;
-                    while (it.hasNext()) {
-                        Vertex v = it.next();
-                        if (v.getUserObject() == rowCurrency) {
-                            fromCurrency = v;
-                        } else if (v.getUserObject() == columnCurrency) {
-                            toCurrency = v;
-                        }
-                    }
+                    Vertex<Currencies> fromCurrency = vertexes.get(rowCurrency);
+                    Vertex<Currencies> toCurrency = vertexes.get(columnCurrency);
                     
                     //Create a new graph edge, and add the edge to the map of weights
                     Edge<String> newEdge = graph.addEdge(fromCurrency, toCurrency);
@@ -99,55 +102,211 @@ public class BestConversionFinder<E> {
      * @return the best conversions (shortest paths)
      */
     public Map<Vertex<E>, Edge<E>> BellmanFord(GraphADT graph, Map<Edge<String>, Double> weights, Vertex source) {
-        //List of vertexes and list of edges
-        ArrayList<Vertex> vertexes = new ArrayList<>();
-        ArrayList<Edge> edges = new ArrayList<>(); 
-        vertexes.addAll(graph.vertexSet()); 
-        edges.addAll(graph.edgeSet());
-        //d (shortest paths to each vertex)
-        Map<Vertex<E>, Double> shortestPaths = new HashMap<>(); 
-        //leastEdge (last edge on shortest path to a vertex)
-        Map<Vertex<E>,Edge<E>> leastEdges = new HashMap<Vertex<E>,Edge<E>>(); 
+        long start = SolverMetrics.ENABLED ? System.nanoTime() : 0;
+        int edgeCount = graph.edgeCount();
+        //Resolve the end vertex indexes and weight of every edge once, so the passes don't allocate
+        int[] edgeFrom = new int[edgeCount];
+        int[] edgeTo = new int[edgeCount];
+        double[] edgeWeights = new double[edgeCount];
+        for (int e = 0; e < edgeCount; e++) {
+            Edge edge = graph.edgeAt(e);
+            edgeFrom[e] = graph.indexOf(edge.endVertex(0));
+            edgeTo[e] = graph.indexOf(edge.endVertex(1));
+            edgeWeights[e] = weights.get(edge);
+        }
+        if (SolverMetrics.ENABLED) {
+            SolverMetrics.BELLMAN_FORD.recordPhase(SETUP_PHASE, System.nanoTime() - start);
+            SolverMetrics.BELLMAN_FORD.addEdgeScans(edgeCount);
+        }
+        return BellmanFord(graph, edgeFrom, edgeTo, edgeWeights, source);
+    }
+    
+    /**
+     * Uses Bellman-Ford to find the best conversion (shortest path) from one currency to all other currencies
+     * of a graph built by WeightedGraphBuilder, using its primitive edge arrays directly
+     * @param weightedGraph the weighted graph to use
+     * @param source the starting currency
+     * @return the best conversions (shortest paths)
+     */
+    public Map<Vertex<E>, Edge<E>> BellmanFord(WeightedGraph<E> weightedGraph, Vertex<E> source) {
+        return BellmanFord(weightedGraph.getGraph(), weightedGraph.getEdgeFrom(), weightedGraph.getEdgeTo(),
+                weightedGraph.getEdgeWeights(), source);
+    }
+    
+    /**
+     * Run Bellman-Ford over edge arrays indexed by graph edge index, and map the results back to the graph
+     * @param graph the graph the edge arrays describe
+     * @param edgeFrom index of the start vertex of each edge
+     * @param edgeTo index of the end vertex of each edge
+     * @param edgeWeights weight of each edge
+     * @param source the starting currency
+     * @return the best conversions (shortest paths)
+     */
+    protected Map<Vertex<E>, Edge<E>> BellmanFord(GraphADT graph, int[] edgeFrom, int[] edgeTo, double[] edgeWeights, Vertex source) {
+        int vertexCount = graph.vertexCount();
+        //d (shortest paths to each vertex), indexed by vertex index
+        double[] shortestPaths = new double[vertexCount];
+        //leastEdge (index of last edge on shortest path to a vertex)
+        int[] leastEdges = new int[vertexCount];
+        relaxEdges(vertexCount, edgeFrom, edgeTo, edgeWeights, edgeWeights.length, graph.indexOf(source), shortestPaths, leastEdges);
         
-        //Setup initial state
-        Iterator<Vertex> itVertex = vertexes.iterator();
-        while (itVertex.hasNext()) { //For each vertex
-            Vertex v = itVertex.next();
-            shortestPaths.put(v, Double.MAX_VALUE);
-            leastEdges.put(v, null);
+        //Build the map of vertexes to last edges on their shortest paths
+        long start = SolverMetrics.ENABLED ? System.nanoTime() : 0;
+        Map<Vertex<E>, Edge<E>> bestConversions = new HashMap<>();
+        for (int v = 0; v < vertexCount; v++) {
+            bestConversions.put(graph.vertexAt(v), leastEdges[v] < 0 ? null : graph.edgeAt(leastEdges[v]));
         }
-        shortestPaths.put(source, 0.0);
+        if (SolverMetrics.ENABLED) {
+            SolverMetrics.BELLMAN_FORD.recordPhase(RESULT_PHASE, System.nanoTime() - start);
+            //Estimate: the two per-vertex arrays plus a map entry (and table slot) per vertex
+            SolverMetrics.BELLMAN_FORD.recordRun(vertexCount, 12L * vertexCount + 40L * vertexCount);
+        }
+        return bestConversions;
+    }
+    
+    /**
+     * The Bellman-Ford relaxation passes, over primitive arrays so that no pass allocates
+     * @param vertexCount the number of vertexes
+     * @param edgeFrom index of the start vertex of each edge
+     * @param edgeTo index of the end vertex of each edge
+     * @param edgeWeights weight of each edge
+     * @param edgeCount the number of edges to use
+     * @param source index of the starting vertex
+     * @param shortestPaths filled with the shortest path weight to each vertex (Double.MAX_VALUE if unreachable)
+     * @param leastEdges filled with the index of the last edge on the shortest path to each vertex (-1 if none)
+     * @return true if a negative weight closed path (an arbitrage) is reachable from the source
+     */
+    public static boolean relaxEdges(int vertexCount, int[] edgeFrom, int[] edgeTo, double[] edgeWeights, int edgeCount,
+            int source, double[] shortestPaths, int[] leastEdges) {
+        long start = SolverMetrics.ENABLED ? System.nanoTime() : 0;
+        int passes = 0;
+        long relaxations = 0;
+        boolean negativeCycle = false;
+        
+        //Setup initial state
+        Arrays.fill(shortestPaths, 0, vertexCount, Double.MAX_VALUE);
+        Arrays.fill(leastEdges, 0, vertexCount, -1);
+        shortestPaths[source] = 0.0;
 
         //Perform iterations. Iterations = amount of vertexes - 1
-        for (int i = 0; i < vertexes.size(); i++) {
-            Iterator<Edge> itEdge = edges.iterator();
-            while (itEdge.hasNext()) { //For every edge in the graph
-                //Get the end verticies of an edge e = (endVerticies[0], endVerticies[1])
-                Edge e = itEdge.next();
-                Vertex[] endVerticies = e.endVertices();
+        //Stop early once a pass makes no change, as no later pass could
+        boolean changed = true;
+        for (int i = 0; i < vertexCount && changed; i++) {
+            changed = false;
+            passes++;
+            for (int e = 0; e < edgeCount; e++) { //For every edge in the graph
                 //Check for shorter path: weight of start of e + weight of e < weight of end of e
-                if (shortestPaths.get(endVerticies[0]) + weights.get(e) < shortestPaths.get(endVerticies[1])) {
-                    //Shorter path to the end of e (endVerticies[1]) found
-                    shortestPaths.put(endVerticies[1], shortestPaths.get(endVerticies[0]) + weights.get(e));
-                    //Update last edge on the shortest path estimate to e (endVerticies[1])
-                    leastEdges.put(endVerticies[1], e);
+                double candidate = shortestPaths[edgeFrom[e]] + edgeWeights[e];
+                if (candidate < shortestPaths[edgeTo[e]]) {
+                    //Shorter path to the end of e found
+                    shortestPaths[edgeTo[e]] = candidate;
+                    //Update last edge on the shortest path estimate to the end of e
+                    leastEdges[edgeTo[e]] = e;
+                    changed = true;
+                    relaxations++;
                 }
             }
         }
         
         //Check for negative weight closed path: an arbitrage
         //This is done by doing an additional iteration to see if any change is made
-        //Does not return false if found
-        Iterator<Edge> itEdge = edges.iterator();
-        while (itEdge.hasNext()) {
-            Edge e = itEdge.next();
-            Vertex[] endVerticies = e.endVertices();
-            if (shortestPaths.get(endVerticies[0]) + weights.get(e) < shortestPaths.get(endVerticies[1])) {
-//                System.out.println("AN ARBITRAGE HAS BEEN FOUND");
+        if (changed) {
+            passes++;
+            for (int e = 0; e < edgeCount && !negativeCycle; e++) {
+                negativeCycle = shortestPaths[edgeFrom[e]] + edgeWeights[e] < shortestPaths[edgeTo[e]];
             }
         }
         
-        //Return map of vertexes to shortest paths
-        return leastEdges;
+        if (SolverMetrics.ENABLED) {
+            SolverMetrics.BELLMAN_FORD.recordPhase(RELAX_PHASE, System.nanoTime() - start);
+            SolverMetrics.BELLMAN_FORD.addPasses(passes);
+            SolverMetrics.BELLMAN_FORD.addRelaxations(relaxations);
+            SolverMetrics.BELLMAN_FORD.addEdgeScans((long) passes * edgeCount);
+            if (negativeCycle) {
+                SolverMetrics.BELLMAN_FORD.addResultsFound(1);
+            }
+        }
+        return negativeCycle;
+    }
+    
+    /**
+     * The Bellman-Ford relaxation passes over a table of weights read in place (e.g. a SharedRateMatrix),
+     * relaxing every cell that has an exchange rather than an edge list
+     * The passes run under the table's read version, and are redone if a write overlapped them; after
+     * READ_ATTEMPTS overlapped runs, a consistent copy of the table is relaxed instead
+     * @param weights the table of weights
+     * @param source index of the starting currency
+     * @param shortestPaths filled with the shortest path weight to each currency (Double.MAX_VALUE if unreachable)
+     * @param previous filled with the previous currency on the shortest path to each currency (-1 if none)
+     * @return true if a negative weight closed path (an arbitrage) is reachable from the source
+     */
+    public static boolean relaxTable(WeightTable weights, int source, double[] shortestPaths, int[] previous) {
+        for (int attempt = 0; attempt < READ_ATTEMPTS; attempt++) {
+            long version = weights.beginRead();
+            boolean negativeCycle = relaxCells(weights, source, shortestPaths, previous);
+            if (weights.validate(version)) {
+                return negativeCycle;
+            }
+        }
+        return relaxCells(WeightTable.of(weights.copyWeights()), source, shortestPaths, previous);
+    }
+    
+    /**
+     * The relaxation passes of relaxTable, without a consistency check
+     */
+    private static boolean relaxCells(WeightTable weights, int source, double[] shortestPaths, int[] previous) {
+        long start = SolverMetrics.ENABLED ? System.nanoTime() : 0;
+        int n = weights.size();
+        int passes = 0;
+        long relaxations = 0;
+        long edgeScans = 0;
+        boolean negativeCycle = false;
+        
+        //Setup initial state
+        Arrays.fill(shortestPaths, 0, n, Double.MAX_VALUE);
+        Arrays.fill(previous, 0, n, -1);
+        shortestPaths[source] = 0.0;
+        
+        //Perform iterations, plus one more to check for a negative weight closed path
+        //Stop early once a pass makes no change, as no later pass could
+        boolean changed = true;
+        for (int pass = 0; pass <= n && changed; pass++) {
+            changed = false;
+            passes++;
+            for (int i = 0; i < n; i++) {
+                if (shortestPaths[i] == Double.MAX_VALUE) { //Nothing to relax from an unreached currency
+                    continue;
+                }
+                for (int j = 0; j < n; j++) {
+                    double weight = weights.weight(i, j);
+                    if (weight == Double.POSITIVE_INFINITY) {
+                        continue;
+                    }
+                    edgeScans++;
+                    if (shortestPaths[i] + weight < shortestPaths[j]) {
+                        if (pass == n) { //A change after n - 1 passes means a negative weight closed path
+                            negativeCycle = true;
+                            break;
+                        }
+                        shortestPaths[j] = shortestPaths[i] + weight;
+                        previous[j] = i;
+                        changed = true;
+                        relaxations++;
+                    }
+                }
+            }
+        }
+        
+        if (SolverMetrics.ENABLED) {
+            SolverMetrics.BELLMAN_FORD.recordPhase(RELAX_PHASE, System.nanoTime() - start);
+            SolverMetrics.BELLMAN_FORD.addPasses(passes);
+            SolverMetrics.BELLMAN_FORD.addRelaxations(relaxations);
+            SolverMetrics.BELLMAN_FORD.addEdgeScans(edgeScans);
+            SolverMetrics.BELLMAN_FORD.recordRun(n, 0);
+            if (negativeCycle) {
+                SolverMetrics.BELLMAN_FORD.addResultsFound(1);
+            }
+        }
+        return negativeCycle;
     }
 }
@@ -1,7 +1,6 @@
 package currencyexchangeproblem;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Stack;
@@ -14,6 +13,8 @@ import java.util.Stack;
  * @author Tamati Rudd 18045626
  */
 public class BridgeExchangeFinder<E> extends DepthFirstSearch<E> {
+    //Phase recorded in SolverMetrics.DEPTH_FIRST_SEARCH
+    protected static final int BRIDGES_PHASE = 1;
     protected static Vertex source; //Source of the exchange finder search
     protected Map<Vertex<E>, Integer> discovered; //d[v]
     protected int discoveredNum; //value of next d[v]
@@ -100,39 +101,30 @@ public class BridgeExchangeFinder<E> extends DepthFirstSearch<E> {
             - any d[v] for any adjacent GREY vertex EXCEPT the parent
             - any m[v] values of all adjacent BLACK vertexes
         */
-        ArrayList<Integer> possibleValues = new ArrayList<>();
-        
         //Case 1: d[v] (discovery order)
-        possibleValues.add(discovered.get(vertex));
+        int smallest = discovered.get(vertex);
         
-        //Case 2: any adjacent GREY vertex EXCEPT the vertex on the PARENT edge
-        for (Edge<E> incidentEdge : vertex.incidentEdges()) {
-            //Filter out the parent edge
-            if (!parentEdges.isEmpty()) {
-                if (parentEdges.peek() == incidentEdge) {
-                    continue;
-                }
-            }
+        int degree = vertex.degree();
+        for (int i = 0; i < degree; i++) {
+            Edge<E> incidentEdge = vertex.incidentEdgeAt(i);
             //Test the colour of the adjacent (opposite) vertex
             Vertex<E> adjacentVertex = incidentEdge.oppositeVertex(vertex);
-            if (vertexColours.get(adjacentVertex) == Colour.GREY) {
+            Colour colour = vertexColours.get(adjacentVertex);
+            if (colour == Colour.GREY) {
+                //Case 2: any adjacent GREY vertex EXCEPT the vertex on the PARENT edge
+                if (!parentEdges.isEmpty() && parentEdges.peek() == incidentEdge) {
+                    continue;
+                }
                 //If the adjacent vertex is grey, consider its d[v] (discovery order)
-                possibleValues.add(discovered.get(adjacentVertex));
-            } 
-        }
-        
-        //Case 3: any m[v] value for any adjacent BLACK vertex
-        for (Edge<E> incidentEdge : vertex.incidentEdges()) {
-            //Test the colour of the adjacent (opposite) vertex
-            Vertex<E> adjacentVertex = incidentEdge.oppositeVertex(vertex);
-            if (vertexColours.get(adjacentVertex) == Colour.BLACK) {
-                //If the adjacent vertex is grey, consider its m[v] (value)
-                possibleValues.add(value.get(adjacentVertex));
-            } 
+                smallest = Math.min(smallest, discovered.get(adjacentVertex));
+            } else if (colour == Colour.BLACK) {
+                //Case 3: any m[v] value for any adjacent BLACK vertex
+                smallest = Math.min(smallest, value.get(adjacentVertex));
+            }
         }
         
         //Determine the value to use (m[vertex])
-        value.put(vertex, Collections.min(possibleValues));
+        value.put(vertex, smallest);
         //Pop off the parent edge
         if (!parentEdges.isEmpty()) {
             Object removed = parentEdges.pop();
@@ -155,14 +147,20 @@ public class BridgeExchangeFinder<E> extends DepthFirstSearch<E> {
      *  - all traversed edges are recorded
      */
     public void findBridges() {
+        long start = SolverMetrics.ENABLED ? System.nanoTime() : 0;
+        int found = bridges.size();
         //For each visited edge
         for (Edge<E> edge : visitedEdges) {
             //Check for bridge
-            Vertex<E>[] endVertices = edge.endVertices();
-            if (value.get(endVertices[1]) > discovered.get(endVertices[0])) {
+            if (value.get(edge.endVertex(1)) > discovered.get(edge.endVertex(0))) {
                 bridges.add(edge);
             }
         }
+        if (SolverMetrics.ENABLED) {
+            SolverMetrics.DEPTH_FIRST_SEARCH.recordPhase(BRIDGES_PHASE, System.nanoTime() - start);
+            SolverMetrics.DEPTH_FIRST_SEARCH.addEdgeScans(visitedEdges.size());
+            SolverMetrics.DEPTH_FIRST_SEARCH.addResultsFound(bridges.size() - found);
+        }
     }
     
     public static void main(String[] args) {
@@ -0,0 +1,601 @@
+package currencyexchangeproblem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class implements a directed or undirected graph that many threads (e.g. one feed handler per venue)
+ * can add and remove vertices and edges in at once:
+ * - Each vertex's adjacency is held in concurrent sets, and vertices hash to one of a fixed number of lock stripes
+ * - Adding or removing an edge locks only the stripes of its two end vertices, so feeds touching different
+ *   currencies do not block each other
+ * - vertexSet, edgeSet and incidentEdges are weakly consistent views: iterating them never throws
+ *   ConcurrentModificationException, and sees each element present for the whole iteration
+ * - Vertices and edges get a dense index when added, and removing one moves the last into its index (as
+ *   AdjacencyListGraph does), so indexes are stable until a vertex or edge is removed; the indexes are changed
+ *   under one short index lock, after the stripes
+ * - Each vertex's incident edges are also held in an array copied on each change, in which an edge keeps its
+ *   position until an edge of that vertex is removed, for degree and incidentEdgeAt
+ * - snapshot takes an immutable GraphSnapshot of the whole graph at one version, with the same indexes, for a solver
+ *   that must see one graph for a whole solve while it changes; it is cached until the graph changes
+ * @author Tamati Rudd 18045626
+ */
+public class ConcurrentGraph<E> implements GraphADT<E> {
+    protected static final int DEFAULT_STRIPES = 64;
+    private final GraphType type;
+    protected final Set<Edge<E>> edges;
+    //Adjacency of each vertex, whose keys are the vertex set
+    protected final ConcurrentHashMap<Vertex<E>, Adjacency> adjacencyLists;
+    protected final Stripe[] stripes;
+    //The adjacency of each vertex index and the edge at each edge index, only used holding indexLock
+    private final ArrayList<Adjacency> vertexIndex;
+    private final ArrayList<ConcurrentEdge> edgeIndex;
+    private final Object indexLock = new Object();
+    private volatile GraphSnapshot<E> snapshot;
+    private volatile boolean modified; //set holding indexLock after each change, cleared when a snapshot is taken
+    private final Object snapshotLock = new Object();
+
+    /**
+     * Construct a new undirected concurrent graph
+     */
+    public ConcurrentGraph() {
+        this(GraphType.UNDIRECTED);
+    }
+
+    /**
+     * Construct a new concurrent graph
+     * @param type UNDIRECTED or DIRECTED
+     */
+    public ConcurrentGraph(GraphType type) {
+        this(type, DEFAULT_STRIPES);
+    }
+
+    /**
+     * Construct a new concurrent graph
+     * @param type UNDIRECTED or DIRECTED
+     * @param stripeCount the number of lock stripes (rounded up to a power of 2), e.g. a few times the feed threads
+     */
+    public ConcurrentGraph(GraphType type, int stripeCount) {
+        this.type = type;
+        edges = ConcurrentHashMap.newKeySet();
+        adjacencyLists = new ConcurrentHashMap<>();
+        vertexIndex = new ArrayList<>();
+        edgeIndex = new ArrayList<>();
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        stripes = new Stripe[Math.max(1, Math.min(size, 1 << 16))];
+        for (int s = 0; s < stripes.length; s++) {
+            stripes[s] = new Stripe(s);
+        }
+    }
+
+    /**
+     * Construct a new concurrent graph holding a copy of a graph
+     * @param graph the graph to copy
+     */
+    public <F extends E> ConcurrentGraph(GraphADT<F> graph) {
+        this(graph.getType());
+        addGraph(graph);
+    }
+
+    @Override
+    public GraphType getType() {
+        return type;
+    }
+
+    /**
+     * Remove all vertices and edges, holding every stripe so no edge is added part way through
+     */
+    @Override
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            stripe.lock();
+        }
+        try {
+            synchronized (indexLock) {
+                edges.clear();
+                adjacencyLists.clear();
+                vertexIndex.clear();
+                edgeIndex.clear();
+                modified = true;
+            }
+        } finally {
+            for (int s = stripes.length - 1; s >= 0; s--) {
+                stripes[s].unlock();
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return adjacencyLists.isEmpty();
+    }
+
+    /**
+     * @return a weakly consistent, unmodifiable view of the vertices
+     */
+    @Override
+    public Set<Vertex<E>> vertexSet() {
+        return Collections.unmodifiableSet(adjacencyLists.keySet());
+    }
+
+    /**
+     * @return a weakly consistent, unmodifiable view of the edges
+     */
+    @Override
+    public Set<Edge<E>> edgeSet() {
+        return Collections.unmodifiableSet(edges);
+    }
+
+    /**
+     * Add a copy of a graph into this graph
+     * @param graph the graph to add
+     */
+    @Override
+    public <F extends E> void addGraph(GraphADT<F> graph) {
+        Map<Vertex<F>, Vertex<E>> correspondence = new HashMap<>();
+        for (Vertex<F> oldVertex : graph.vertexSet()) {
+            correspondence.put(oldVertex, addVertex(oldVertex.getUserObject()));
+        }
+        for (Edge<F> oldEdge : graph.edgeSet()) {
+            addEdge(correspondence.get(oldEdge.endVertex(0)), correspondence.get(oldEdge.endVertex(1)));
+        }
+    }
+
+    /**
+     * Add a new isolated vertex
+     * @param element the element the vertex holds
+     * @return the new vertex
+     */
+    @Override
+    public Vertex<E> addVertex(E element) {
+        Vertex<E> vertex = new ConcurrentVertex(element);
+        Stripe stripe = stripeOf(vertex);
+        stripe.lock();
+        try {
+            addVertexLocked(vertex);
+        } finally {
+            stripe.unlock();
+        }
+        return vertex;
+    }
+
+    /**
+     * Add a new edge between two vertices, adding the vertices if they are not in the graph
+     * @param vertex0 the start vertex
+     * @param vertex1 the end vertex
+     * @return the new edge
+     */
+    @Override
+    public Edge<E> addEdge(Vertex<E> vertex0, Vertex<E> vertex1) {
+        ConcurrentEdge edge = new ConcurrentEdge(vertex0, vertex1);
+        Stripe first = stripeOf(vertex0), second = stripeOf(vertex1);
+        lockBoth(first, second);
+        try {
+            Adjacency adjacency0 = addVertexLocked(vertex0);
+            Adjacency adjacency1 = addVertexLocked(vertex1);
+            synchronized (indexLock) {
+                edges.add(edge);
+                edge.index = edgeIndex.size();
+                edgeIndex.add(edge);
+                modified = true;
+            }
+            adjacency0.add(edge, vertex1);
+            if (type == GraphType.UNDIRECTED) {
+                if (vertex0 != vertex1) {
+                    adjacency1.add(edge, vertex0);
+                }
+            } else {
+                adjacency1.incoming.add(edge);
+            }
+        } finally {
+            unlockBoth(first, second);
+        }
+        return edge;
+    }
+
+    /**
+     * Remove a vertex and every edge incident to or from it
+     * @param vertex the vertex to remove
+     * @return whether the vertex was in the graph
+     */
+    @Override
+    public <F> boolean removeVertex(Vertex<F> vertex) {
+        Adjacency adjacency = adjacencyLists.get(vertex);
+        if (adjacency == null) {
+            return false;
+        }
+        Stripe stripe = stripeOf(vertex);
+        while (true) {
+            //Remove the incident edges, each under the stripes of both its ends
+            for (Edge<E> edge : adjacency.edges) {
+                removeEdge(edge);
+            }
+            if (adjacency.incoming != null) {
+                for (Edge<E> edge : adjacency.incoming) {
+                    removeEdge(edge);
+                }
+            }
+            //An edge added meanwhile holds this stripe, so once it is held with no edges left the vertex can go
+            stripe.lock();
+            try {
+                if (adjacencyLists.get(vertex) != adjacency) {
+                    return false; //removed by another thread
+                }
+                if (adjacency.edges.isEmpty() && (adjacency.incoming == null || adjacency.incoming.isEmpty())) {
+                    synchronized (indexLock) {
+                        adjacencyLists.remove(vertex);
+                        //Move the last vertex into the removed vertex's index
+                        Adjacency last = vertexIndex.remove(vertexIndex.size() - 1);
+                        if (last != adjacency) {
+                            vertexIndex.set(adjacency.index, last);
+                            last.index = adjacency.index;
+                        }
+                        adjacency.index = -1;
+                        modified = true;
+                    }
+                    return true;
+                }
+            } finally {
+                stripe.unlock();
+            }
+        }
+    }
+
+    /**
+     * Remove an edge
+     * @param edge the edge to remove
+     * @return whether the edge was in the graph
+     */
+    @Override
+    public <F> boolean removeEdge(Edge<F> edge) {
+        if (!edges.contains(edge)) {
+            return false;
+        }
+        //Safe: the edge is in this graph, so it is one of its edges between Vertex<E> ends
+        @SuppressWarnings("unchecked")
+        ConcurrentEdge removed = (ConcurrentEdge) edge;
+        Vertex<E> vertex0 = removed.endVertex(0);
+        Vertex<E> vertex1 = removed.endVertex(1);
+        Stripe first = stripeOf(vertex0), second = stripeOf(vertex1);
+        lockBoth(first, second);
+        try {
+            synchronized (indexLock) {
+                if (!edges.remove(edge)) {
+                    return false; //removed by another thread
+                }
+                //Move the last edge into the removed edge's index
+                ConcurrentEdge last = edgeIndex.remove(edgeIndex.size() - 1);
+                if (last != removed) {
+                    edgeIndex.set(removed.index, last);
+                    last.index = removed.index;
+                }
+                removed.index = -1;
+                modified = true;
+            }
+            adjacencyLists.get(vertex0).remove(removed, vertex1);
+            if (type == GraphType.UNDIRECTED) {
+                if (vertex0 != vertex1) {
+                    adjacencyLists.get(vertex1).remove(removed, vertex0);
+                }
+            } else {
+                adjacencyLists.get(vertex1).incoming.remove(removed);
+            }
+            return true;
+        } finally {
+            unlockBoth(first, second);
+        }
+    }
+
+    @Override
+    public boolean containsVertex(Vertex<?> vertex) {
+        return adjacencyLists.containsKey(vertex);
+    }
+
+    @Override
+    public boolean containsEdge(Edge<?> edge) {
+        return edges.contains(edge);
+    }
+
+    @Override
+    public int vertexCount() {
+        synchronized (indexLock) {
+            return vertexIndex.size();
+        }
+    }
+
+    @Override
+    public int edgeCount() {
+        synchronized (indexLock) {
+            return edgeIndex.size();
+        }
+    }
+
+    @Override
+    public Vertex<E> vertexAt(int index) {
+        synchronized (indexLock) {
+            if (index < 0 || index >= vertexIndex.size()) {
+                throw new IndexOutOfBoundsException("no vertex at " + index);
+            }
+            return vertexIndex.get(index).vertex;
+        }
+    }
+
+    @Override
+    public int indexOf(Vertex<?> vertex) {
+        Adjacency adjacency = adjacencyLists.get(vertex);
+        return adjacency == null ? -1 : adjacency.index;
+    }
+
+    @Override
+    public Edge<E> edgeAt(int index) {
+        synchronized (indexLock) {
+            if (index < 0 || index >= edgeIndex.size()) {
+                throw new IndexOutOfBoundsException("no edge at " + index);
+            }
+            return edgeIndex.get(index);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder output = new StringBuilder("Graph:\n");
+        for (Map.Entry<Vertex<E>, Adjacency> entry : adjacencyLists.entrySet()) {
+            output.append(entry.getKey()).append(" has edges:").append(entry.getValue().edges).append('\n');
+        }
+        return output.toString();
+    }
+
+    /**
+     * Take an immutable snapshot of the graph at one version, for a solver to read for a whole solve
+     * Costs O(1) if the graph has not changed since the last snapshot, else O(V + E) to copy it, holding the index
+     * lock only while the vertex and edge indexes are copied
+     * @return the snapshot, whose indexes are this graph's indexes when it was taken, and whose vertexFor maps this
+     * graph's vertices to the snapshot's
+     */
+    public GraphSnapshot<E> snapshot() {
+        GraphSnapshot<E> current = snapshot;
+        if (current != null && !modified) {
+            return current;
+        }
+        synchronized (snapshotLock) {
+            current = snapshot;
+            if (current != null && !modified) {
+                return current;
+            }
+            //Every indexed edge's end vertices are indexed whenever the index lock is free, so the copy is consistent
+            ArrayList<Vertex<E>> vertices;
+            ArrayList<Edge<E>> indexedEdges;
+            synchronized (indexLock) {
+                modified = false; //Any change from here on is seen by the next call
+                vertices = new ArrayList<>(vertexIndex.size());
+                for (Adjacency adjacency : vertexIndex) {
+                    vertices.add(adjacency.vertex);
+                }
+                indexedEdges = new ArrayList<Edge<E>>(edgeIndex);
+            }
+            current = new GraphSnapshot<>(type, vertices, indexedEdges);
+            snapshot = current;
+            return current;
+        }
+    }
+
+    /**
+     * Add a vertex if it is not already in the graph, holding its stripe
+     * @return the vertex's adjacency
+     */
+    private Adjacency addVertexLocked(Vertex<E> vertex) {
+        Adjacency adjacency = adjacencyLists.get(vertex);
+        if (adjacency == null) {
+            adjacency = new Adjacency(vertex);
+            synchronized (indexLock) {
+                adjacencyLists.put(vertex, adjacency);
+                adjacency.index = vertexIndex.size();
+                vertexIndex.add(adjacency);
+                modified = true;
+            }
+        }
+        return adjacency;
+    }
+
+    protected Stripe stripeOf(Vertex<?> vertex) {
+        int hash = vertex.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    /**
+     * Lock two stripes in index order, so two threads locking the same pair cannot deadlock
+     */
+    private void lockBoth(Stripe first, Stripe second) {
+        if (first == second) {
+            first.lock();
+        } else if (first.index < second.index) {
+            first.lock();
+            second.lock();
+        } else {
+            second.lock();
+            first.lock();
+        }
+    }
+
+    private void unlockBoth(Stripe first, Stripe second) {
+        first.unlock();
+        if (second != first) {
+            second.unlock();
+        }
+    }
+
+    /**
+     * A lock guarding the vertices that hash to it
+     */
+    protected static class Stripe extends ReentrantLock {
+        private static final long serialVersionUID = 1L;
+        private final int index;
+
+        private Stripe(int index) {
+            this.index = index;
+        }
+    }
+
+    /**
+     * The edges of a vertex: from (or, undirected, at) it, and for a directed graph to it
+     * Each edge's adjacent vertex is counted in neighbours for constant time isAdjacent
+     * The edges are also held in an array that is replaced (never changed) on each change, holding the stripe
+     */
+    protected class Adjacency {
+        private final Vertex<E> vertex;
+        private volatile int index; //the vertex index, only written holding indexLock
+        private final Set<Edge<E>> edges = ConcurrentHashMap.newKeySet();
+        private final Set<Edge<E>> incoming = type == GraphType.DIRECTED ? ConcurrentHashMap.newKeySet() : null;
+        private final ConcurrentHashMap<Vertex<?>, Integer> neighbours = new ConcurrentHashMap<>();
+        private volatile Edge<E>[] edgeArray;
+
+        private Adjacency(Vertex<E> vertex) {
+            this.vertex = vertex;
+            //Safe: the array only ever holds Edge<E>
+            @SuppressWarnings("unchecked")
+            Edge<E>[] none = (Edge<E>[]) new Edge<?>[0];
+            edgeArray = none;
+        }
+
+        private void add(Edge<E> edge, Vertex<E> adjacent) {
+            edges.add(edge);
+            neighbours.merge(adjacent, 1, Integer::sum);
+            Edge<E>[] current = edgeArray;
+            Edge<E>[] added = Arrays.copyOf(current, current.length + 1);
+            added[current.length] = edge;
+            edgeArray = added;
+        }
+
+        private void remove(Edge<E> edge, Vertex<E> adjacent) {
+            edges.remove(edge);
+            neighbours.computeIfPresent(adjacent, (vertex, count) -> count == 1 ? null : count - 1);
+            //Move the last edge into the removed edge's position
+            Edge<E>[] current = edgeArray;
+            for (int k = 0; k < current.length; k++) {
+                if (current[k] == edge) {
+                    Edge<E>[] removed = Arrays.copyOf(current, current.length - 1);
+                    if (k < removed.length) {
+                        removed[k] = current[current.length - 1];
+                    }
+                    edgeArray = removed;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * A vertex of the concurrent graph
+     */
+    protected class ConcurrentVertex implements Vertex<E> {
+        private volatile E element;
+
+        public ConcurrentVertex(E element) {
+            this.element = element;
+        }
+
+        @Override
+        public E getUserObject() {
+            return element;
+        }
+
+        @Override
+        public void setUserObject(E element) {
+            this.element = element;
+        }
+
+        /**
+         * @return a weakly consistent, unmodifiable view of the edges from (or, undirected, at) this vertex
+         */
+        @Override
+        public Set<Edge<E>> incidentEdges() {
+            Adjacency adjacency = adjacencyLists.get(this);
+            return adjacency == null ? Collections.emptySet() : Collections.unmodifiableSet(adjacency.edges);
+        }
+
+        @Override
+        public Set<Vertex<E>> adjacentVertices() {
+            Set<Vertex<E>> vertices = new HashSet<>();
+            for (Edge<E> edge : incidentEdges()) {
+                vertices.add(edge.oppositeVertex(this));
+            }
+            return vertices;
+        }
+
+        @Override
+        public boolean isAdjacent(Vertex<?> vertex) {
+            Adjacency adjacency = adjacencyLists.get(this);
+            return adjacency != null && adjacency.neighbours.containsKey(vertex);
+        }
+
+        @Override
+        public int degree() {
+            Adjacency adjacency = adjacencyLists.get(this);
+            return adjacency == null ? 0 : adjacency.edgeArray.length;
+        }
+
+        @Override
+        public Edge<E> incidentEdgeAt(int index) {
+            Adjacency adjacency = adjacencyLists.get(this);
+            Edge<E>[] edgeArray = adjacency == null ? null : adjacency.edgeArray;
+            if (edgeArray == null || index < 0 || index >= edgeArray.length) {
+                throw new IndexOutOfBoundsException("no edge at " + index);
+            }
+            return edgeArray[index];
+        }
+
+        @Override
+        public int hashCode() {
+            E current = element;
+            return current == null ? 0 : current.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "" + element;
+        }
+    }
+
+    /**
+     * An edge of the concurrent graph, from vertex0 to vertex1 if directed
+     */
+    protected class ConcurrentEdge implements Edge<E> {
+        private final Vertex<E> vertex0, vertex1;
+        private int index; //the edge index, only used holding indexLock
+
+        public ConcurrentEdge(Vertex<E> vertex0, Vertex<E> vertex1) {
+            this.vertex0 = vertex0;
+            this.vertex1 = vertex1;
+        }
+
+        @Override
+        public Vertex<E>[] endVertices() {
+            //Safe: the array only ever holds this edge's two vertices, which are Vertex<E>
+            @SuppressWarnings("unchecked")
+            Vertex<E>[] vertices = (Vertex<E>[]) new Vertex<?>[] {vertex0, vertex1};
+            return vertices;
+        }
+
+        @Override
+        public Vertex<E> oppositeVertex(Vertex<E> vertex) {
+            return vertex0.equals(vertex) ? vertex1 : vertex0;
+        }
+
+        @Override
+        public Vertex<E> endVertex(int index) {
+            return index == 0 ? vertex0 : vertex1;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + vertex0 + "-" + vertex1 + ")";
+        }
+    }
+}
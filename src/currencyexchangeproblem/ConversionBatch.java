@@ -0,0 +1,101 @@
+package currencyexchangeproblem;
+
+/**
+ * This class holds the results of a batch of conversion requests priced by BatchConversionPricer, in columns:
+ * - The status, converted amount and overall rate of each request
+ * - The best conversion path (its currencies, from source to target) of all requests in one int array,
+ *   with each request's start and length in it; a path of k currencies makes k - 1 conversions
+ * @author Tamati Rudd 18045626
+ */
+public class ConversionBatch {
+    public static final byte CONVERTED = 0; //a best conversion was found
+    public static final byte UNREACHABLE = 1; //the target cannot be reached from the source
+    public static final byte ARBITRAGE = 2; //the target is reachable from an arbitrage, so there is no best conversion
+    protected int size;
+    protected byte[] statuses;
+    protected double[] convertedAmounts;
+    protected double[] rates;
+    protected int[] pathStarts;
+    protected int[] pathLengths;
+    protected int[] paths;
+    
+    /**
+     * Construct a new batch result
+     * @param size the number of requests
+     */
+    protected ConversionBatch(int size) {
+        this.size = size;
+        statuses = new byte[size];
+        convertedAmounts = new double[size];
+        rates = new double[size];
+        pathStarts = new int[size];
+        pathLengths = new int[size];
+        paths = new int[Math.max(16, 4 * size)];
+    }
+    
+    /**
+     * @return the number of requests
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * @param request the request index
+     * @return CONVERTED, UNREACHABLE or ARBITRAGE
+     */
+    public byte status(int request) {
+        return statuses[request];
+    }
+    
+    /**
+     * @param request the request index
+     * @return the amount in the target currency, or NaN if not CONVERTED
+     */
+    public double convertedAmount(int request) {
+        return convertedAmounts[request];
+    }
+    
+    /**
+     * @param request the request index
+     * @return the overall exchange rate of the best conversion, or NaN if not CONVERTED
+     */
+    public double rate(int request) {
+        return rates[request];
+    }
+    
+    /**
+     * @param request the request index
+     * @return the number of currencies on the best conversion path, including the source and target (0 if not CONVERTED)
+     */
+    public int pathLength(int request) {
+        return pathLengths[request];
+    }
+    
+    /**
+     * @param request the request index
+     * @param k the position on the path, from 0 (the source) to pathLength - 1 (the target)
+     * @return the currency index at that position
+     */
+    public int pathCurrency(int request, int k) {
+        if (k < 0 || k >= pathLengths[request]) {
+            throw new IndexOutOfBoundsException("no path position " + k + " for request " + request);
+        }
+        return paths[pathStarts[request] + k];
+    }
+    
+    /**
+     * @return the path currencies of every request, to be read with pathStart and pathLength
+     */
+    public int[] paths() {
+        return paths;
+    }
+    
+    /**
+     * @param request the request index
+     * @return where the request's path starts in paths()
+     */
+    public int pathStart(int request) {
+        return pathStarts[request];
+    }
+}
@@ -23,6 +23,12 @@ public class DepthFirstSearch<E> {
     };
     protected Map<Vertex<E>, Colour> vertexColours;
     protected GraphADT<E> graph;
+    // phase recorded in SolverMetrics.DEPTH_FIRST_SEARCH
+    protected static final int SEARCH_PHASE = 0;
+    // depth of recursion, and counts for the search being recorded
+    private int searchDepth;
+    private long searchStart;
+    private long verticesVisited, edgeScans;
 
     // creates new searcher which has performed no depth-first search
     public DepthFirstSearch(GraphADT<E> graph) {
@@ -40,19 +46,43 @@ public class DepthFirstSearch<E> {
         if (!graph.containsVertex(startVertex)) {
             throw new IllegalArgumentException("vertex not in graph");
         }
-        // handle the starting vertex
-        vertexColours.put(startVertex, Colour.GREY);
-        vertexDiscovered(startVertex);
-        // visit each adjacent vertex
-        for (Edge<E> incidentEdge : startVertex.incidentEdges()) {
-            Vertex<E> adjacentVertex = incidentEdge.oppositeVertex(startVertex);
-            if (vertexColours.get(adjacentVertex) == Colour.WHITE) {
-                edgeTraversed(incidentEdge);
-                search(adjacentVertex);
+        if (searchDepth++ == 0 && SolverMetrics.ENABLED) {
+            searchStart = System.nanoTime();
+            verticesVisited = 0;
+            edgeScans = 0;
+        }
+        // the depth is restored even if a hook throws, so the searcher
+        // can be used again
+        try {
+            // handle the starting vertex
+            vertexColours.put(startVertex, Colour.GREY);
+            vertexDiscovered(startVertex);
+            // visit each adjacent vertex, using the incident edge cursor
+            // so that no iterator is allocated for each vertex
+            int degree = startVertex.degree();
+            verticesVisited++;
+            edgeScans += degree;
+            for (int i = 0; i < degree; i++) {
+                Edge<E> incidentEdge = startVertex.incidentEdgeAt(i);
+                Vertex<E> adjacentVertex = incidentEdge.oppositeVertex(startVertex);
+                if (vertexColours.get(adjacentVertex) == Colour.WHITE) {
+                    edgeTraversed(incidentEdge);
+                    search(adjacentVertex);
+                }
+            }
+            vertexColours.put(startVertex, Colour.BLACK);
+            vertexFinished(startVertex);
+            if (searchDepth == 1 && SolverMetrics.ENABLED) {
+                SolverMetrics metrics = SolverMetrics.DEPTH_FIRST_SEARCH;
+                metrics.recordPhase(SEARCH_PHASE, System.nanoTime() - searchStart);
+                metrics.addVerticesVisited(verticesVisited);
+                metrics.addEdgeScans(edgeScans);
+                // one colour map entry per vertex
+                metrics.recordRun(vertexColours.size(), 40L * vertexColours.size());
             }
+        } finally {
+            searchDepth--;
         }
-        vertexColours.put(startVertex, Colour.BLACK);
-        vertexFinished(startVertex);
     }
 
     // hook method that is called whenever a vertex has been discovered
@@ -14,4 +14,6 @@ public interface Edge<E>
    public Vertex<E>[] endVertices();
    // returns the end vertex opposite the specified vertex
    public Vertex<E> oppositeVertex(Vertex<E> vertex);
+   // returns end vertex 0 or 1 for this edge without creating an array
+   public Vertex<E> endVertex(int index);
 }
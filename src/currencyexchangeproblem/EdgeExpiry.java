@@ -0,0 +1,117 @@
+package currencyexchangeproblem;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class expires graph edges (and their weights) that have not been refreshed within their time to live:
+ * - Each refreshed edge has its timer rescheduled on a TimerWheel, rather than edges being scanned for age
+ * - Expired edges are removed from the graph and the weights map in one batch per call to expireEdges
+ * - Listeners are notified after each batch, so caches and finders built from the graph can be refreshed
+ * @author Tamati Rudd 18045626
+ */
+public class EdgeExpiry<E> {
+    protected GraphADT<E> graph;
+    protected Map<Edge<E>, Double> weights;
+    protected TimerWheel wheel;
+    protected Map<Edge<E>, TimerWheel.Timer> timers;
+    protected ArrayList<Edge<E>> expiredEdges; //edges removed by the latest batch
+    protected ArrayList<ExpiryListener<E>> listeners;
+    private final TimerWheel.ExpiryListener expiryHandler = this::removeExpired;
+    
+    /**
+     * Construct a new edge expiry tracker
+     * @param graph the graph whose edges expire
+     * @param weights the map of edges to weights, which expired edges are also removed from
+     * @param wheel the timer wheel used to expire edges, on which only this expiry schedules timers
+     */
+    public EdgeExpiry(GraphADT<E> graph, Map<Edge<E>, Double> weights, TimerWheel wheel) {
+        this.graph = graph;
+        this.weights = weights;
+        this.wheel = wheel;
+        this.timers = new HashMap<>();
+        this.expiredEdges = new ArrayList<>();
+        this.listeners = new ArrayList<>();
+    }
+    
+    /**
+     * Record that an edge's rate has been refreshed, so it expires at a new time
+     * @param edge the edge
+     * @param expiresAt the time the edge expires, in the wheel's time units
+     */
+    public void refresh(Edge<E> edge, long expiresAt) {
+        TimerWheel.Timer timer = timers.get(edge);
+        if (timer == null) {
+            timer = new TimerWheel.Timer(0, edge);
+            timers.put(edge, timer);
+        }
+        wheel.schedule(timer, expiresAt);
+    }
+    
+    /**
+     * Stop tracking an edge, e.g. when it is removed from the graph by other means
+     * @param edge the edge
+     */
+    public void forget(Edge<E> edge) {
+        TimerWheel.Timer timer = timers.remove(edge);
+        if (timer != null) {
+            wheel.cancel(timer);
+        }
+    }
+    
+    /**
+     * Remove every edge that has expired by the current time, in one batch, then notify the listeners
+     * @param now the current time, in the wheel's time units
+     * @return the number of edges removed
+     */
+    public int expireEdges(long now) {
+        expiredEdges.clear();
+        wheel.advance(now, expiryHandler);
+        if (!expiredEdges.isEmpty()) {
+            for (ExpiryListener<E> listener : listeners) {
+                listener.edgesExpired(graph, expiredEdges);
+            }
+        }
+        return expiredEdges.size();
+    }
+    
+    /**
+     * Remove the edges for a batch of expired timers
+     * @param expired the expired timers
+     * @param count the number of expired timers
+     */
+    protected void removeExpired(TimerWheel.Timer[] expired, int count) {
+        for (int k = 0; k < count; k++) {
+            //Safe: only refresh schedules timers on the wheel, always with an Edge<E> payload
+            @SuppressWarnings("unchecked")
+            Edge<E> edge = (Edge<E>) expired[k].getPayload();
+            timers.remove(edge);
+            weights.remove(edge);
+            if (graph.removeEdge(edge)) {
+                expiredEdges.add(edge);
+            }
+        }
+    }
+    
+    /**
+     * Add a listener notified after each batch of edges expires
+     * @param listener the listener
+     */
+    public void addExpiryListener(ExpiryListener<E> listener) {
+        listeners.add(listener);
+    }
+    
+    /**
+     * Notified after each batch of edges expires
+     */
+    public interface ExpiryListener<E> {
+        
+        /**
+         * @param graph the graph the edges were removed from
+         * @param expiredEdges the edges removed, only valid during the call
+         */
+        public void edgesExpired(GraphADT<E> graph, List<Edge<E>> expiredEdges);
+    }
+}
@@ -0,0 +1,156 @@
+package currencyexchangeproblem;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * This class detects arbitrage in two tiers, so rounding in the log weights cannot raise a false signal:
+ * - Screen: Floyd-Warshall on the double weights plus epsilon per edge, so a cycle is only a candidate if its
+ *   log profit beats epsilon on every leg; cycles that are only negative from rounding (around 1e-16 per leg)
+ *   never become candidates, and cannot hide real ones from the predecessor walk
+ * - Confirm: the product of the exchange rates around each candidate cycle is compared with 1. The double product
+ *   decides when it is further from 1 than its rounding error bound; otherwise the exact BigDecimal product of the
+ *   quoted (shortest decimal) rates does
+ * Only confirmed cycles (rate product above 1) are reported
+ * @author Tamati Rudd 18045626
+ */
+public class ExactArbitrageDetector {
+    //Unit roundoff of double arithmetic: each multiplication is within this relative error
+    protected static final double UNIT_ROUNDOFF = Math.ulp(1.0) / 2;
+    protected final RateMatrix rates;
+    protected final double epsilon;
+    protected final boolean compact;
+    protected ArrayList<int[]> cycles;
+    protected ArrayList<BigDecimal> products;
+    protected int candidates, rejected, exactChecks;
+
+    /**
+     * Construct a new two-tier arbitrage detector
+     * @param rates the exchange rates and their weights
+     * @param epsilon slack added to each edge weight when screening (e.g. 1e-12; 0 screens every negative cycle)
+     * @param compact whether to screen with compact Floyd-Warshall (float distances), for which epsilon should be
+     *                above float rounding of the weights (e.g. 1e-5)
+     */
+    public ExactArbitrageDetector(RateMatrix rates, double epsilon, boolean compact) {
+        this.rates = rates;
+        this.epsilon = epsilon;
+        this.compact = compact;
+    }
+
+    /**
+     * Screen for candidate cycles, then confirm each from the rates
+     * @return the number of confirmed arbitrage cycles
+     */
+    public int detect() {
+        cycles = new ArrayList<>();
+        products = new ArrayList<>();
+        candidates = 0;
+        rejected = 0;
+        exactChecks = 0;
+        int n = rates.size();
+        double[][] weights = rates.weights();
+        double[][] screened = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                screened[i][j] = weights[i][j] + epsilon; //infinity stays infinity
+            }
+        }
+        ArbitrageFinder screen = new ArbitrageFinder(screened, compact);
+        HashSet<String> seen = new HashSet<>();
+        for (int i = 0; i < n; i++) {
+            if (!(screen.distance(i, i) < 0)) {
+                continue;
+            }
+            int[] cycle = screen.arbitrageCycle(i);
+            if (cycle == null || !seen.add(ShardedArbitrageScan.cycleKey(cycle))) {
+                continue;
+            }
+            candidates++;
+            BigDecimal product = confirm(cycle);
+            if (product != null) {
+                cycles.add(cycle);
+                products.add(product);
+            } else {
+                rejected++;
+            }
+        }
+        return cycles.size();
+    }
+
+    /**
+     * Confirm a candidate cycle
+     * @param cycle the cycle's currencies in path order
+     * @return the rate product if above 1 (exact when the double product was too close to 1 to decide), else null
+     */
+    protected BigDecimal confirm(int[] cycle) {
+        //The double product of k rates is within about k * u relative error of the product of the doubles,
+        //which is within about k * u of the product of the quoted decimals
+        double product = 1;
+        for (int k = 0; k < cycle.length; k++) {
+            product *= rates.rate(cycle[k], cycle[(k + 1) % cycle.length]);
+        }
+        double bound = 2.02 * cycle.length * UNIT_ROUNDOFF * product;
+        if (product - bound > 1) {
+            return BigDecimal.valueOf(product);
+        }
+        if (product + bound < 1) {
+            return null;
+        }
+        exactChecks++;
+        BigDecimal exact = exactRateProduct(rates, cycle);
+        return exact.compareTo(BigDecimal.ONE) > 0 ? exact : null;
+    }
+
+    /**
+     * Multiply the exchange rates around a cycle exactly
+     * Each rate is taken as its shortest decimal form (the rate as quoted, e.g. 0.6712), so the product has no rounding
+     * @param rates the exchange rates
+     * @param cycle the cycle's currencies in path order
+     * @return the exact rate product
+     */
+    public static BigDecimal exactRateProduct(RateMatrix rates, int[] cycle) {
+        BigDecimal product = BigDecimal.ONE;
+        for (int k = 0; k < cycle.length; k++) {
+            product = product.multiply(BigDecimal.valueOf(rates.rate(cycle[k], cycle[(k + 1) % cycle.length])));
+        }
+        return product;
+    }
+
+    /**
+     * @param k which cycle, from 0 to detect() - 1
+     * @return the confirmed cycle's currencies in path order
+     */
+    public int[] cycle(int k) {
+        return cycles.get(k).clone();
+    }
+
+    /**
+     * @param k which cycle, from 0 to detect() - 1
+     * @return the cycle's rate product (above 1), exact if the double product could not decide
+     */
+    public BigDecimal rateProduct(int k) {
+        return products.get(k);
+    }
+
+    /**
+     * @return the number of distinct candidate cycles screened in the last detect
+     */
+    public int candidates() {
+        return candidates;
+    }
+
+    /**
+     * @return the number of candidates rejected as rounding in the last detect
+     */
+    public int rejected() {
+        return rejected;
+    }
+
+    /**
+     * @return the number of candidates that needed the exact product in the last detect
+     */
+    public int exactChecks() {
+        return exactChecks;
+    }
+}
@@ -36,4 +36,16 @@ public interface GraphADT<E>
    public boolean containsVertex(Vertex<?> vertex);
    // returns whether the specified edge is in the graph
    public boolean containsEdge(Edge<?> edge);
+   // returns the number of vertices in the graph
+   public int vertexCount();
+   // returns the number of edges in the graph
+   public int edgeCount();
+   // returns the vertex at the specified index from 0 to vertexCount()-1
+   // where indices are only stable until a vertex is removed
+   public Vertex<E> vertexAt(int index);
+   // returns the index of the specified vertex, or -1 if not in graph
+   public int indexOf(Vertex<?> vertex);
+   // returns the edge at the specified index from 0 to edgeCount()-1
+   // where indices are only stable until an edge is removed
+   public Edge<E> edgeAt(int index);
 }
@@ -0,0 +1,346 @@
+package currencyexchangeproblem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class is an immutable copy of a graph at one point in time, as taken by ConcurrentGraph.snapshot for solvers:
+ * - Vertex and edge indexes, and each vertex's degree and incident edges, all come from the same version of the
+ *   graph, so a solver (e.g. DepthFirstSearch reading degree then incidentEdgeAt) sees one graph for a whole solve
+ * - The incident edges of every vertex are held in one compressed array, so the cursor methods are array reads
+ * - Its vertices and edges are its own copies; vertexFor maps a vertex of the original graph to its copy
+ * Methods that would change the graph throw UnsupportedOperationException
+ * @author Tamati Rudd 18045626
+ */
+public class GraphSnapshot<E> implements GraphADT<E> {
+    private final GraphType type;
+    protected final List<SnapshotVertex<E>> vertices;
+    protected final List<SnapshotEdge<E>> edges;
+    protected final List<Vertex<E>> originalVertices; //the original vertex of each vertex index
+    protected final List<Edge<E>> originalEdges; //the original edge of each edge index
+    protected final Map<Vertex<?>, SnapshotVertex<E>> copies; //each original vertex's copy
+    protected final int[] incidentOffsets; //the incident edges of vertex i are from incidentOffsets[i]
+    protected final int[] incidentEdges; //edge indexes of the incident edges of each vertex in turn
+    private Set<Vertex<E>> vertexSet;
+    private Set<Edge<E>> edgeSet;
+
+    /**
+     * Construct a snapshot from a consistent view of a graph's vertices and edges
+     * @param type UNDIRECTED or DIRECTED
+     * @param originalVertices the vertices, in index order
+     * @param originalEdges the edges, in index order, whose end vertices are all in originalVertices
+     */
+    protected GraphSnapshot(GraphType type, List<Vertex<E>> originalVertices, List<Edge<E>> originalEdges) {
+        this.type = type;
+        this.originalVertices = Collections.unmodifiableList(new ArrayList<>(originalVertices));
+        this.originalEdges = Collections.unmodifiableList(new ArrayList<>(originalEdges));
+        int n = originalVertices.size(), m = originalEdges.size();
+        vertices = new ArrayList<>(n);
+        copies = new HashMap<>(n * 4 / 3 + 1);
+        for (int i = 0; i < n; i++) {
+            SnapshotVertex<E> copy = new SnapshotVertex<>(this, i, originalVertices.get(i).getUserObject());
+            vertices.add(copy);
+            copies.put(originalVertices.get(i), copy);
+        }
+        edges = new ArrayList<>(m);
+        for (int e = 0; e < m; e++) {
+            Edge<E> edge = originalEdges.get(e);
+            SnapshotVertex<E> vertex0 = copies.get(edge.endVertex(0)), vertex1 = copies.get(edge.endVertex(1));
+            if (vertex0 == null || vertex1 == null) {
+                throw new IllegalArgumentException("edge " + edge + " has an end vertex not in the snapshot");
+            }
+            edges.add(new SnapshotEdge<>(e, vertex0, vertex1));
+        }
+
+        //Incident edges in compressed rows: from (or, undirected, at) each vertex, as ConcurrentGraph holds them
+        incidentOffsets = new int[n + 1];
+        for (SnapshotEdge<E> edge : edges) {
+            incidentOffsets[edge.vertex0.index + 1]++;
+            if (type == GraphType.UNDIRECTED && edge.vertex1 != edge.vertex0) {
+                incidentOffsets[edge.vertex1.index + 1]++;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            incidentOffsets[i + 1] += incidentOffsets[i];
+        }
+        incidentEdges = new int[incidentOffsets[n]];
+        int[] next = new int[n];
+        System.arraycopy(incidentOffsets, 0, next, 0, n);
+        for (SnapshotEdge<E> edge : edges) {
+            incidentEdges[next[edge.vertex0.index]++] = edge.index;
+            if (type == GraphType.UNDIRECTED && edge.vertex1 != edge.vertex0) {
+                incidentEdges[next[edge.vertex1.index]++] = edge.index;
+            }
+        }
+    }
+
+    /**
+     * @param original a vertex of the graph the snapshot was taken of
+     * @return its copy in the snapshot, or null if it was not in the graph when the snapshot was taken
+     */
+    public Vertex<E> vertexFor(Vertex<?> original) {
+        return copies.get(original);
+    }
+
+    /**
+     * @param index a vertex index
+     * @return the vertex of the original graph at that index
+     */
+    protected Vertex<E> originalVertexAt(int index) {
+        return originalVertices.get(index);
+    }
+
+    /**
+     * @param original a vertex of the original graph
+     * @return its index, or -1 if it was not in the graph when the snapshot was taken
+     */
+    protected int indexOfOriginal(Vertex<?> original) {
+        SnapshotVertex<E> copy = copies.get(original);
+        return copy == null ? -1 : copy.index;
+    }
+
+    /**
+     * @param index an edge index
+     * @return the edge of the original graph at that index
+     */
+    protected Edge<E> originalEdgeAt(int index) {
+        return originalEdges.get(index);
+    }
+
+    @Override
+    public GraphType getType() {
+        return type;
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("a graph snapshot cannot be changed");
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return vertices.isEmpty();
+    }
+
+    /**
+     * @return an unmodifiable set of the vertices, in index order
+     */
+    @Override
+    public Set<Vertex<E>> vertexSet() {
+        if (vertexSet == null) {
+            vertexSet = Collections.unmodifiableSet(new LinkedHashSet<Vertex<E>>(vertices));
+        }
+        return vertexSet;
+    }
+
+    /**
+     * @return an unmodifiable set of the edges, in index order
+     */
+    @Override
+    public Set<Edge<E>> edgeSet() {
+        if (edgeSet == null) {
+            edgeSet = Collections.unmodifiableSet(new LinkedHashSet<Edge<E>>(edges));
+        }
+        return edgeSet;
+    }
+
+    @Override
+    public <F extends E> void addGraph(GraphADT<F> graph) {
+        throw new UnsupportedOperationException("a graph snapshot cannot be changed");
+    }
+
+    @Override
+    public Vertex<E> addVertex(E element) {
+        throw new UnsupportedOperationException("a graph snapshot cannot be changed");
+    }
+
+    @Override
+    public Edge<E> addEdge(Vertex<E> vertex0, Vertex<E> vertex1) {
+        throw new UnsupportedOperationException("a graph snapshot cannot be changed");
+    }
+
+    @Override
+    public <F> boolean removeVertex(Vertex<F> vertex) {
+        throw new UnsupportedOperationException("a graph snapshot cannot be changed");
+    }
+
+    @Override
+    public <F> boolean removeEdge(Edge<F> edge) {
+        throw new UnsupportedOperationException("a graph snapshot cannot be changed");
+    }
+
+    @Override
+    public boolean containsVertex(Vertex<?> vertex) {
+        return indexOf(vertex) >= 0;
+    }
+
+    @Override
+    public boolean containsEdge(Edge<?> edge) {
+        return edge instanceof SnapshotEdge && edge == edges.get(((SnapshotEdge<?>) edge).index);
+    }
+
+    @Override
+    public int vertexCount() {
+        return vertices.size();
+    }
+
+    @Override
+    public int edgeCount() {
+        return edges.size();
+    }
+
+    @Override
+    public Vertex<E> vertexAt(int index) {
+        if (index < 0 || index >= vertices.size()) {
+            throw new IndexOutOfBoundsException("no vertex at " + index);
+        }
+        return vertices.get(index);
+    }
+
+    @Override
+    public int indexOf(Vertex<?> vertex) {
+        if (vertex instanceof SnapshotVertex && ((SnapshotVertex<?>) vertex).snapshot == this) {
+            return ((SnapshotVertex<?>) vertex).index;
+        }
+        return -1;
+    }
+
+    @Override
+    public Edge<E> edgeAt(int index) {
+        if (index < 0 || index >= edges.size()) {
+            throw new IndexOutOfBoundsException("no edge at " + index);
+        }
+        return edges.get(index);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder output = new StringBuilder("Graph:\n");
+        for (SnapshotVertex<E> vertex : vertices) {
+            output.append(vertex).append(" has edges:").append(vertex.incidentEdges()).append('\n');
+        }
+        return output.toString();
+    }
+
+    /**
+     * A vertex of a snapshot, whose incident edges are a row of the snapshot's compressed array
+     */
+    protected static class SnapshotVertex<E> implements Vertex<E> {
+        private final GraphSnapshot<E> snapshot;
+        private final int index;
+        private final E element;
+
+        private SnapshotVertex(GraphSnapshot<E> snapshot, int index, E element) {
+            this.snapshot = snapshot;
+            this.index = index;
+            this.element = element;
+        }
+
+        @Override
+        public E getUserObject() {
+            return element;
+        }
+
+        @Override
+        public void setUserObject(E element) {
+            throw new UnsupportedOperationException("a graph snapshot cannot be changed");
+        }
+
+        @Override
+        public Set<Edge<E>> incidentEdges() {
+            Set<Edge<E>> incident = new LinkedHashSet<>();
+            for (int k = 0; k < degree(); k++) {
+                incident.add(incidentEdgeAt(k));
+            }
+            return Collections.unmodifiableSet(incident);
+        }
+
+        @Override
+        public Set<Vertex<E>> adjacentVertices() {
+            Set<Vertex<E>> adjacent = new HashSet<>();
+            for (int k = 0; k < degree(); k++) {
+                adjacent.add(incidentEdgeAt(k).oppositeVertex(this));
+            }
+            return adjacent;
+        }
+
+        /**
+         * Costs O(degree), scanning this vertex's incident edges
+         */
+        @Override
+        public boolean isAdjacent(Vertex<?> vertex) {
+            for (int k = 0; k < degree(); k++) {
+                if (incidentEdgeAt(k).oppositeVertex(this) == vertex) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public int degree() {
+            return snapshot.incidentOffsets[index + 1] - snapshot.incidentOffsets[index];
+        }
+
+        @Override
+        public Edge<E> incidentEdgeAt(int k) {
+            if (k < 0 || k >= degree()) {
+                throw new IndexOutOfBoundsException("no edge at " + k);
+            }
+            return snapshot.edges.get(snapshot.incidentEdges[snapshot.incidentOffsets[index] + k]);
+        }
+
+        @Override
+        public int hashCode() {
+            return element == null ? 0 : element.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "" + element;
+        }
+    }
+
+    /**
+     * An edge of a snapshot, from vertex0 to vertex1 if directed
+     */
+    protected static class SnapshotEdge<E> implements Edge<E> {
+        private final int index;
+        private final SnapshotVertex<E> vertex0, vertex1;
+
+        private SnapshotEdge(int index, SnapshotVertex<E> vertex0, SnapshotVertex<E> vertex1) {
+            this.index = index;
+            this.vertex0 = vertex0;
+            this.vertex1 = vertex1;
+        }
+
+        @Override
+        public Vertex<E>[] endVertices() {
+            //Safe: the array only ever holds this edge's two vertices, which are Vertex<E>
+            @SuppressWarnings("unchecked")
+            Vertex<E>[] ends = (Vertex<E>[]) new Vertex<?>[] {vertex0, vertex1};
+            return ends;
+        }
+
+        @Override
+        public Vertex<E> oppositeVertex(Vertex<E> vertex) {
+            return vertex0 == vertex ? vertex1 : vertex0;
+        }
+
+        @Override
+        public Vertex<E> endVertex(int index) {
+            return index == 0 ? vertex0 : vertex1;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + vertex0 + "-" + vertex1 + ")";
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package currencyexchangeproblem;
+
+import java.util.Arrays;
+
+/**
+ * This class keeps the best conversions from one source currency up to date as batches of ticks are applied
+ * (a TickPipeline batch listener):
+ * - Each batch's changed cells are checked against the shortest path tree, in O(changed cells)
+ * - Bellman-Ford (BestConversionFinder.relaxTable) only reruns if a changed cell is on the tree, or would shorten
+ *   a path; otherwise the tree is still optimal, as every path stays tight and no edge can improve one
+ * - A rerun that finds a negative weight closed path reachable from the source reports arbitrage, and then every
+ *   later change reruns until it is gone
+ * - The working arrays belong to the thread applying batches; each solve publishes an immutable Result, so other
+ *   threads read a complete solve
+ * @author Tamati Rudd 18045626
+ */
+public class IncrementalConversionCheck implements TickPipeline.BatchListener {
+    protected final int source;
+    //Working state, only used by the thread that solves (the TickPipeline apply stage)
+    protected final double[] shortestPaths;
+    protected final int[] previous;
+    protected boolean arbitrage;
+    protected boolean solved;
+    private volatile Result result; //the latest solve, for other threads
+    protected volatile long recomputations, batchesSkipped;
+
+    /**
+     * Construct a new incremental check
+     * @param n the number of currencies
+     * @param source the source currency index
+     */
+    public IncrementalConversionCheck(int n, int source) {
+        this.source = source;
+        shortestPaths = new double[n];
+        previous = new int[n];
+        solved = false;
+        double[] unreached = new double[n];
+        int[] none = new int[n];
+        Arrays.fill(unreached, Double.MAX_VALUE);
+        Arrays.fill(none, -1);
+        result = new Result(unreached, none, false);
+    }
+
+    /**
+     * Solve from scratch, e.g. before the first batch
+     * @param weights the weights table
+     */
+    public void solve(WeightTable weights) {
+        arbitrage = BestConversionFinder.relaxTable(weights, source, shortestPaths, previous);
+        solved = true;
+        result = new Result(shortestPaths.clone(), previous.clone(), arbitrage);
+        recomputations++;
+    }
+
+    @Override
+    public void batchApplied(RateMatrix rates, int ticks) {
+        if (!solved || arbitrage || affectsTree(rates)) {
+            solve(rates);
+        } else {
+            batchesSkipped++;
+        }
+    }
+
+    /**
+     * Check whether any changed cell is on the shortest path tree or would shorten a path
+     * @param rates the rate matrix, whose dirty set holds the changed cells
+     * @return whether the tree needs recomputing
+     */
+    protected boolean affectsTree(RateMatrix rates) {
+        for (int k = 0; k < rates.dirtyCount(); k++) {
+            int cell = rates.dirtyCell(k);
+            int i = rates.rowOf(cell), j = rates.columnOf(cell);
+            if (previous[j] == i) { //A tree edge changed
+                return true;
+            }
+            if (shortestPaths[i] != Double.MAX_VALUE && shortestPaths[i] + rates.weight(i, j) < shortestPaths[j]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the latest solve, whose values are all from the same solve
+     */
+    public Result result() {
+        return result;
+    }
+
+    /**
+     * @return whether the latest solve found arbitrage reachable from the source
+     */
+    public boolean isArbitrage() {
+        return result.isArbitrage();
+    }
+
+    /**
+     * @param j target currency index
+     * @return the weight of the best conversion from the source to j in the latest solve (Double.MAX_VALUE if
+     * unreachable); use result() to read several values from one solve
+     */
+    public double shortestPath(int j) {
+        return result.shortestPath(j);
+    }
+
+    /**
+     * @param j target currency index
+     * @return the previous currency on the best conversion to j in the latest solve, or -1 if none
+     */
+    public int previous(int j) {
+        return result.previous(j);
+    }
+
+    /**
+     * @return the number of times Bellman-Ford has run
+     */
+    public long recomputations() {
+        return recomputations;
+    }
+
+    /**
+     * @return the number of batches that did not need Bellman-Ford to rerun
+     */
+    public long batchesSkipped() {
+        return batchesSkipped;
+    }
+
+    /**
+     * The best conversions from the source found by one solve, which never change once published
+     */
+    public static class Result {
+        private final double[] shortestPaths;
+        private final int[] previous;
+        private final boolean arbitrage;
+
+        private Result(double[] shortestPaths, int[] previous, boolean arbitrage) {
+            this.shortestPaths = shortestPaths;
+            this.previous = previous;
+            this.arbitrage = arbitrage;
+        }
+
+        /**
+         * @return whether the solve found arbitrage reachable from the source
+         */
+        public boolean isArbitrage() {
+            return arbitrage;
+        }
+
+        /**
+         * @param j target currency index
+         * @return the weight of the best conversion from the source to j (Double.MAX_VALUE if unreachable)
+         */
+        public double shortestPath(int j) {
+            return shortestPaths[j];
+        }
+
+        /**
+         * @param j target currency index
+         * @return the previous currency on the best conversion to j, or -1 if none
+         */
+        public int previous(int j) {
+            return previous[j];
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package currencyexchangeproblem;
+
+import java.util.Arrays;
+
+/**
+ * This class precomputes a distance oracle for best conversion estimates between any pair of currencies:
+ * - Johnson potentials h (Bellman-Ford from a virtual source joined to every currency) reweight each edge to
+ *   w(u, v) + h(u) - h(v) >= 0, so Dijkstra can be used; a weight d' in the reweighted graph is d + h(s) - h(t),
+ *   so the weight is d = d' - h(s) + h(t)
+ * - A few landmark currencies are picked far apart, and Dijkstra stores the reweighted distances from and to each
+ * - Any pair then has bounds in O(landmarks), by the triangle inequality:
+ *   upper = min(d'(s, l) + d'(l, t)), lower = max(d'(l, t) - d'(l, s), d'(s, l) - d'(t, l))
+ * - estimate answers with the upper bound when it is within a tolerance of the lower bound, and otherwise falls
+ *   back to an exact A* search guided by the landmark lower bounds
+ * The oracle needs no arbitrage: with a negative weight closed path there are no shortest paths to store
+ * @author Tamati Rudd 18045626
+ */
+public class LandmarkOracle {
+    protected static final double UNREACHABLE = Double.POSITIVE_INFINITY;
+    protected final int n;
+    //Edges from (and, reversed, to) each vertex in compressed rows: offsets[v] to offsets[v + 1]
+    protected final int[] outOffsets, outTargets, inOffsets, inSources;
+    protected final double[] outWeights, inWeights; //reweighted, so never negative
+    protected final double[] potentials; //Johnson potential h of each vertex
+    protected final int[] landmarks;
+    protected final double[][] fromLandmark; //reweighted distance from each landmark to each vertex
+    protected final double[][] toLandmark; //reweighted distance from each vertex to each landmark
+    private final ThreadLocal<Search> searches;
+
+    /**
+     * Construct a new landmark oracle
+     * @param vertexCount the number of currencies
+     * @param edgeFrom index of the start currency of each edge
+     * @param edgeTo index of the end currency of each edge
+     * @param edgeWeights weight of each edge
+     * @param edgeCount the number of edges to use
+     * @param landmarkCount the number of landmarks (at most vertexCount)
+     * @throws IllegalArgumentException if there is arbitrage (a negative weight closed path)
+     */
+    public LandmarkOracle(int vertexCount, int[] edgeFrom, int[] edgeTo, double[] edgeWeights, int edgeCount,
+            int landmarkCount) {
+        n = vertexCount;
+
+        //Johnson potentials: Bellman-Ford from a virtual vertex n with a 0 weight edge to every vertex
+        int[] from = Arrays.copyOf(edgeFrom, edgeCount + n);
+        int[] to = Arrays.copyOf(edgeTo, edgeCount + n);
+        double[] weights = Arrays.copyOf(edgeWeights, edgeCount + n);
+        for (int v = 0; v < n; v++) {
+            from[edgeCount + v] = n;
+            to[edgeCount + v] = v;
+            weights[edgeCount + v] = 0;
+        }
+        potentials = new double[n + 1];
+        if (BestConversionFinder.relaxEdges(n + 1, from, to, weights, edgeCount + n, n, potentials, new int[n + 1])) {
+            throw new IllegalArgumentException("arbitrage found, so there are no shortest paths");
+        }
+
+        //Compressed rows of the reweighted edges, both ways
+        outOffsets = new int[n + 1];
+        inOffsets = new int[n + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            outOffsets[edgeFrom[e] + 1]++;
+            inOffsets[edgeTo[e] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            outOffsets[v + 1] += outOffsets[v];
+            inOffsets[v + 1] += inOffsets[v];
+        }
+        outTargets = new int[edgeCount];
+        outWeights = new double[edgeCount];
+        inSources = new int[edgeCount];
+        inWeights = new double[edgeCount];
+        int[] outNext = Arrays.copyOf(outOffsets, n);
+        int[] inNext = Arrays.copyOf(inOffsets, n);
+        for (int e = 0; e < edgeCount; e++) {
+            int u = edgeFrom[e], v = edgeTo[e];
+            //Rounding can leave a tight edge very slightly negative
+            double weight = Math.max(0, edgeWeights[e] + potentials[u] - potentials[v]);
+            outTargets[outNext[u]] = v;
+            outWeights[outNext[u]++] = weight;
+            inSources[inNext[v]] = u;
+            inWeights[inNext[v]++] = weight;
+        }
+
+        //Landmarks, each the vertex farthest from those already picked (unreachable counts as farthest)
+        //The searches only hold the vertex count, so a thread's search does not keep the oracle reachable
+        int size = n;
+        searches = ThreadLocal.withInitial(() -> new Search(size));
+        landmarkCount = Math.min(landmarkCount, n);
+        landmarks = new int[landmarkCount];
+        fromLandmark = new double[landmarkCount][];
+        toLandmark = new double[landmarkCount][];
+        double[] nearest = new double[n];
+        Arrays.fill(nearest, UNREACHABLE);
+        boolean[] picked = new boolean[n];
+        int next = 0;
+        for (int l = 0; l < landmarkCount; l++) {
+            landmarks[l] = next;
+            picked[next] = true;
+            fromLandmark[l] = dijkstra(next, outOffsets, outTargets, outWeights);
+            toLandmark[l] = dijkstra(next, inOffsets, inSources, inWeights);
+            //Reweighted distances are often 0, so a landmark may be no nearer than others and must be skipped
+            double farthest = -1;
+            for (int v = 0; v < n; v++) {
+                nearest[v] = Math.min(nearest[v], fromLandmark[l][v] + toLandmark[l][v]);
+                if (!picked[v] && nearest[v] > farthest) {
+                    farthest = nearest[v];
+                    next = v;
+                }
+            }
+        }
+    }
+
+    /**
+     * Construct a new landmark oracle over a graph built by WeightedGraphBuilder
+     * @param weightedGraph the weighted graph, whose vertex indexes are the currency indexes
+     * @param landmarkCount the number of landmarks
+     */
+    public LandmarkOracle(WeightedGraph<?> weightedGraph, int landmarkCount) {
+        this(weightedGraph.vertexCount(), weightedGraph.getEdgeFrom(), weightedGraph.getEdgeTo(),
+                weightedGraph.getEdgeWeights(), weightedGraph.edgeCount(), landmarkCount);
+    }
+
+    /**
+     * Get an upper bound on the best conversion weight, from a path through a landmark, in O(landmarks)
+     * @param s source currency index
+     * @param t target currency index
+     * @return the bound, or infinity if no path through a landmark is known
+     */
+    public double upperBound(int s, int t) {
+        if (s == t) {
+            return 0;
+        }
+        double upper = UNREACHABLE;
+        for (int l = 0; l < landmarks.length; l++) {
+            upper = Math.min(upper, toLandmark[l][s] + fromLandmark[l][t]);
+        }
+        return upper - potentials[s] + potentials[t];
+    }
+
+    /**
+     * Get a lower bound on the best conversion weight, in O(landmarks)
+     * @param s source currency index
+     * @param t target currency index
+     * @return the bound, or infinity if a landmark shows t cannot be reached from s
+     */
+    public double lowerBound(int s, int t) {
+        return reweightedLowerBound(s, t) - potentials[s] + potentials[t];
+    }
+
+    /**
+     * Estimate the best conversion weight, exactly unless the landmark bounds are already within a tolerance
+     * @param s source currency index
+     * @param t target currency index
+     * @param tolerance how far above the exact weight the answer may be
+     * @return the weight (infinity if t cannot be reached), at most tolerance above the exact weight
+     */
+    public double estimate(int s, int t, double tolerance) {
+        double upper = upperBound(s, t);
+        double lower = lowerBound(s, t);
+        if (lower == UNREACHABLE) {
+            return UNREACHABLE;
+        }
+        if (upper - lower <= tolerance) {
+            return upper;
+        }
+        return exactDistance(s, t);
+    }
+
+    /**
+     * Find the best conversion weight exactly, with A* search guided by the landmark lower bounds
+     * @param s source currency index
+     * @param t target currency index
+     * @return the weight, or infinity if t cannot be reached
+     */
+    public double exactDistance(int s, int t) {
+        if (s == t) {
+            return 0;
+        }
+        Search search = searches.get();
+        search.start();
+        search.reach(s, 0, reweightedLowerBound(s, t));
+        int u;
+        while ((u = search.pop()) >= 0) {
+            if (u == t) {
+                return search.distance[t] - potentials[s] + potentials[t];
+            }
+            for (int k = outOffsets[u]; k < outOffsets[u + 1]; k++) {
+                int v = outTargets[k];
+                double distance = search.distance[u] + outWeights[k];
+                if (!search.reached(v) || distance < search.distance[v]) {
+                    search.reach(v, distance, distance + reweightedLowerBound(v, t));
+                }
+            }
+        }
+        return UNREACHABLE;
+    }
+
+    /**
+     * @param s source currency index
+     * @param t target currency index
+     * @param tolerance how far above the exact weight the answer may be
+     * @return the best conversion rate, from estimate (0 if t cannot be reached)
+     */
+    public double estimateRate(int s, int t, double tolerance) {
+        //Exchange rate to weight = ln(1 / rate), so rate = 1 / e^weight
+        return Math.exp(-estimate(s, t, tolerance));
+    }
+
+    /**
+     * @return the landmark currency indexes
+     */
+    public int[] landmarks() {
+        return landmarks.clone();
+    }
+
+    /**
+     * The landmark lower bound on the reweighted distance, which is also a consistent A* heuristic
+     */
+    private double reweightedLowerBound(int s, int t) {
+        if (s == t) {
+            return 0;
+        }
+        double lower = 0;
+        for (int l = 0; l < landmarks.length; l++) {
+            double[] from = fromLandmark[l], to = toLandmark[l];
+            //The differences only bound the distance when both are finite
+            if (from[s] != UNREACHABLE && from[t] != UNREACHABLE) {
+                lower = Math.max(lower, from[t] - from[s]);
+            } else if (from[s] != UNREACHABLE) {
+                return UNREACHABLE; //l reaches s, so if s reached t then l would reach t
+            }
+            if (to[s] != UNREACHABLE && to[t] != UNREACHABLE) {
+                lower = Math.max(lower, to[s] - to[t]);
+            } else if (to[t] != UNREACHABLE) {
+                return UNREACHABLE; //t reaches l, so if s reached t then s would reach l
+            }
+        }
+        return lower;
+    }
+
+    /**
+     * Dijkstra over compressed rows of non-negative weights
+     * @return the distance to each vertex, infinity if unreachable
+     */
+    private double[] dijkstra(int source, int[] offsets, int[] targets, double[] weights) {
+        Search search = searches.get();
+        search.start();
+        search.reach(source, 0, 0);
+        int u;
+        while ((u = search.pop()) >= 0) {
+            for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+                int v = targets[k];
+                double distance = search.distance[u] + weights[k];
+                if (!search.reached(v) || distance < search.distance[v]) {
+                    search.reach(v, distance, distance);
+                }
+            }
+        }
+        double[] distances = new double[n];
+        for (int v = 0; v < n; v++) {
+            distances[v] = search.reached(v) ? search.distance[v] : UNREACHABLE;
+        }
+        return distances;
+    }
+
+    /**
+     * Scratch state for one search at a time per thread: distances stamped with the search they belong to,
+     * and a binary heap of (priority, vertex) entries where stale entries are skipped when popped
+     */
+    private static class Search {
+        private final double[] distance;
+        private final int[] stamps;
+        private final boolean[] settled;
+        private int stamp;
+        private double[] priorities;
+        private int[] vertices;
+        private int size;
+
+        private Search(int n) {
+            distance = new double[n];
+            stamps = new int[n];
+            settled = new boolean[n];
+            priorities = new double[Math.max(16, n)];
+            vertices = new int[Math.max(16, n)];
+        }
+
+        private void start() {
+            stamp++;
+            if (stamp == 0) { //The stamps have wrapped around, so forget every earlier search
+                Arrays.fill(stamps, 0);
+                stamp = 1;
+            }
+            size = 0;
+        }
+
+        private boolean reached(int v) {
+            return stamps[v] == stamp;
+        }
+
+        private void reach(int v, double d, double priority) {
+            stamps[v] = stamp;
+            settled[v] = false;
+            distance[v] = d;
+            if (size == priorities.length) {
+                priorities = Arrays.copyOf(priorities, 2 * size);
+                vertices = Arrays.copyOf(vertices, 2 * size);
+            }
+            int k = size++;
+            while (k > 0 && priorities[(k - 1) >>> 1] > priority) {
+                int parent = (k - 1) >>> 1;
+                priorities[k] = priorities[parent];
+                vertices[k] = vertices[parent];
+                k = parent;
+            }
+            priorities[k] = priority;
+            vertices[k] = v;
+        }
+
+        /**
+         * @return the unsettled vertex of least priority, which is then settled, or -1 if there is none
+         */
+        private int pop() {
+            while (size > 0) {
+                int v = vertices[0];
+                double last = priorities[--size];
+                int lastVertex = vertices[size];
+                int k = 0;
+                while (2 * k + 1 < size) {
+                    int child = 2 * k + 1;
+                    if (child + 1 < size && priorities[child + 1] < priorities[child]) {
+                        child++;
+                    }
+                    if (priorities[child] >= last) {
+                        break;
+                    }
+                    priorities[k] = priorities[child];
+                    vertices[k] = vertices[child];
+                    k = child;
+                }
+                priorities[k] = last;
+                vertices[k] = lastVertex;
+                if (!settled[v]) {
+                    settled[v] = true;
+                    return v;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package currencyexchangeproblem;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class records latencies (in nanoseconds) into power of two buckets:
+ * - Recording is lock-free and allocation-free, using striped LongAdder counters, so many threads can record at once
+ * - Percentiles are estimated as the upper bound of the bucket they fall in (at most double the true value)
+ * @author Tamati Rudd 18045626
+ */
+public class LatencyHistogram {
+    protected LongAdder[] buckets; //buckets[b] counts latencies below 2^b that are at least 2^(b-1)
+    protected LongAdder count;
+    protected LongAdder total;
+    protected LongAccumulator max;
+    
+    /**
+     * Construct a new, empty latency histogram
+     */
+    public LatencyHistogram() {
+        buckets = new LongAdder[65];
+        for (int b = 0; b < buckets.length; b++) {
+            buckets[b] = new LongAdder();
+        }
+        count = new LongAdder();
+        total = new LongAdder();
+        max = new LongAccumulator(Math::max, 0);
+    }
+    
+    /**
+     * Record one latency
+     * @param nanos the latency in nanoseconds (negative values are recorded as 0)
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets[64 - Long.numberOfLeadingZeros(nanos)].increment();
+        count.increment();
+        total.add(nanos);
+        max.accumulate(nanos);
+    }
+    
+    /**
+     * @return the number of latencies recorded
+     */
+    public long count() {
+        return count.sum();
+    }
+    
+    /**
+     * @return the mean latency in nanoseconds, or 0 if none recorded
+     */
+    public long mean() {
+        long n = count.sum();
+        return (n == 0) ? 0 : total.sum() / n;
+    }
+    
+    /**
+     * @return the largest latency recorded in nanoseconds
+     */
+    public long max() {
+        return max.get();
+    }
+    
+    /**
+     * Estimate a percentile latency
+     * @param percentile the percentile, from 0 to 100
+     * @return the upper bound of the bucket holding the percentile in nanoseconds, capped at the max
+     */
+    public long percentile(double percentile) {
+        long n = count.sum();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(n * percentile / 100.0);
+        long seen = 0;
+        for (int b = 0; b < buckets.length; b++) {
+            seen += buckets[b].sum();
+            if (seen >= rank && seen > 0) {
+                long upper = (b == 0) ? 0 : (b == 64) ? Long.MAX_VALUE : (1L << b) - 1;
+                return Math.min(upper, max.get());
+            }
+        }
+        return max.get();
+    }
+    
+    /**
+     * Clear all recorded latencies
+     */
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+}
@@ -0,0 +1,158 @@
+package currencyexchangeproblem;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class is a closed-loop load test driver:
+ * - Each worker thread runs its own seeded SyntheticMarket, and applies batches of ticks to a RateMatrix
+ * - After each batch it rebuilds the graph and runs BestConversionFinder (Bellman-Ford), ArbitrageFinder
+ *   (compact Floyd-Warshall) and BridgeExchangeFinder, before applying the next batch
+ * - It reports sustained ticks per second, and the latency of each batch (ticks applied to results ready)
+ * Usage: LoadTestDriver [--currencies 100] [--density 0.1] [--volatility 0.0001] [--spread 0.001]
+ *        [--arbitrage 0.01] [--threads 2] [--ticks 100000] [--batch 1000] [--seed 1]
+ * Per-solver metrics from SolverMetrics are printed at the end
+ * @author Tamati Rudd 18045626
+ */
+public class LoadTestDriver {
+    protected int currencies = 100;
+    protected double density = 0.1;
+    protected double volatility = 0.0001;
+    protected double spread = 0.001;
+    protected double arbitrage = 0.01;
+    protected int threads = 2;
+    protected long ticks = 100000;
+    protected int batch = 1000;
+    protected long seed = 1;
+    protected LatencyHistogram batchLatency = new LatencyHistogram();
+    
+    /**
+     * Construct a load test driver from command line arguments
+     * @param args pairs of --setting value
+     */
+    public LoadTestDriver(String[] args) {
+        Map<String, String> settings = new HashMap<>();
+        for (int a = 0; a + 1 < args.length; a += 2) {
+            if (!args[a].startsWith("--")) {
+                throw new IllegalArgumentException("expected --setting but found " + args[a]);
+            }
+            settings.put(args[a].substring(2), args[a + 1]);
+        }
+        currencies = Integer.parseInt(settings.getOrDefault("currencies", "" + currencies));
+        density = Double.parseDouble(settings.getOrDefault("density", "" + density));
+        volatility = Double.parseDouble(settings.getOrDefault("volatility", "" + volatility));
+        spread = Double.parseDouble(settings.getOrDefault("spread", "" + spread));
+        arbitrage = Double.parseDouble(settings.getOrDefault("arbitrage", "" + arbitrage));
+        threads = Integer.parseInt(settings.getOrDefault("threads", "" + threads));
+        ticks = Long.parseLong(settings.getOrDefault("ticks", "" + ticks));
+        batch = Integer.parseInt(settings.getOrDefault("batch", "" + batch));
+        seed = Long.parseLong(settings.getOrDefault("seed", "" + seed));
+    }
+    
+    /**
+     * Run the load test and print the results
+     * @throws Exception if a worker fails
+     */
+    public void run() throws Exception {
+        System.out.println("Load test: " + currencies + " currencies, density " + density + ", volatility " + volatility
+                + ", spread " + spread + ", arbitrage " + arbitrage + ", " + threads + " threads, " + ticks
+                + " ticks in batches of " + batch + ", seed " + seed);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<long[]>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            long workerTicks = ticks / threads + (t < ticks % threads ? 1 : 0);
+            long workerSeed = seed + t;
+            results.add(pool.submit(() -> runWorker(workerSeed, workerTicks)));
+        }
+        long applied = 0, arbitrageBatches = 0, injected = 0;
+        for (Future<long[]> result : results) {
+            long[] counts = result.get();
+            applied += counts[0];
+            arbitrageBatches += counts[1];
+            injected += counts[2];
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+        
+        System.out.printf("Applied %d ticks in %.3f s: %.0f ticks/s sustained%n", applied, seconds, applied / seconds);
+        System.out.printf("Batch latency: mean %.3f ms, p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms%n",
+                batchLatency.mean() / 1e6, batchLatency.percentile(50) / 1e6, batchLatency.percentile(99) / 1e6,
+                batchLatency.percentile(99.9) / 1e6, batchLatency.max() / 1e6);
+        System.out.println("Arbitrage injected by " + injected + " ticks, found after " + arbitrageBatches + " of "
+                + batchLatency.count() + " batches");
+        System.out.println(SolverMetrics.BELLMAN_FORD);
+        System.out.println(SolverMetrics.FLOYD_WARSHALL);
+        System.out.println(SolverMetrics.DEPTH_FIRST_SEARCH);
+    }
+    
+    /**
+     * Feed one synthetic market's ticks through the solvers, one batch at a time
+     * @param workerSeed the market seed
+     * @param workerTicks the number of ticks to apply
+     * @return ticks applied, batches with arbitrage found, and ticks that injected arbitrage
+     */
+    protected long[] runWorker(long workerSeed, long workerTicks) {
+        SyntheticMarket market = new SyntheticMarket(workerSeed, currencies, density, volatility, spread, arbitrage);
+        RateMatrix rates = market.newRateMatrix();
+        SyntheticMarket.Tick tick = new SyntheticMarket.Tick();
+        Integer[] elements = new Integer[currencies];
+        for (int i = 0; i < currencies; i++) {
+            elements[i] = i;
+        }
+        double[] shortestPaths = new double[currencies];
+        int[] leastEdges = new int[currencies];
+        long applied = 0, arbitrageBatches = 0, injected = 0;
+        
+        while (applied < workerTicks) {
+            long batchStart = System.nanoTime();
+            //Apply a batch of ticks
+            int size = (int) Math.min(batch, workerTicks - applied);
+            for (int k = 0; k < size; k++) {
+                market.nextTick(tick);
+                rates.setRate(tick.getFrom(), tick.getTo(), tick.getRate());
+                if (tick.isArbitrage()) {
+                    injected++;
+                }
+            }
+            applied += size;
+            rates.clearDirty();
+            
+            //Best conversions from the first currency
+            double[][] weights = rates.weights();
+            WeightedGraph<Integer> weightedGraph = WeightedGraphBuilder.fromMatrix(elements, weights);
+            BestConversionFinder.relaxEdges(currencies, weightedGraph.getEdgeFrom(), weightedGraph.getEdgeTo(),
+                    weightedGraph.getEdgeWeights(), weightedGraph.edgeCount(), 0, shortestPaths, leastEdges);
+            
+            //Arbitrage
+            ArbitrageFinder arbitrageFinder = new ArbitrageFinder(weights, true);
+            if (arbitrageFinder.findArbitrage() > 0) {
+                arbitrageBatches++;
+            }
+            
+            //Bridges of the undirected graph of quoted pairs
+            GraphADT<Integer> undirected = new AdjacencyListGraph<>(GraphADT.GraphType.UNDIRECTED, currencies, market.pairCount());
+            for (int i = 0; i < currencies; i++) {
+                undirected.addVertex(i);
+            }
+            for (int p = 0; p < market.pairCount(); p++) {
+                undirected.addEdge(undirected.vertexAt(market.pairFrom(p)), undirected.vertexAt(market.pairTo(p)));
+            }
+            BridgeExchangeFinder<Integer> bridgeFinder = new BridgeExchangeFinder<>(undirected);
+            bridgeFinder.search(undirected.vertexAt(0));
+            bridgeFinder.findBridges();
+            
+            batchLatency.record(System.nanoTime() - batchStart);
+        }
+        return new long[] {applied, arbitrageBatches, injected};
+    }
+    
+    public static void main(String[] args) throws Exception {
+        new LoadTestDriver(args).run();
+    }
+}
@@ -0,0 +1,485 @@
+package currencyexchangeproblem;
+
+import java.util.Arrays;
+
+/**
+ * This class finds the cycle of least mean weight per edge, which over log weights (ln(1 / rate)) is the
+ * arbitrage with the most profit per leg (a negative mean is arbitrage, with rate product e^-mean per leg):
+ * - Vertices that cannot be on a cycle (no path out of them leads back) are pruned first
+ * - Howard's policy iteration picks one edge out of each vertex, finds the cycles of that policy and their means,
+ *   then switches vertices to edges leading to a lower mean cycle, or failing that to a shorter path to theirs,
+ *   until no switch helps. Each iteration is O(edges), and few are needed in practice
+ * - Karp's algorithm is the fallback if Howard has not converged within MAX_ITERATIONS. It takes O(vertices * edges)
+ *   time and O(vertices) memory, as its walk weights are computed twice keeping two rows at a time. Its cycle is then
+ *   found by Bellman-Ford over the weights less slightly more than the mean, where that cycle is negative
+ * Path reconstruction as in ArbitrageFinder.arbitrageCycle: vertices in path order, the last leading to the first
+ * @author Tamati Rudd 18045626
+ */
+public class MinimumMeanCycle {
+    protected static final int MAX_ITERATIONS = 1000;
+    protected static final double EPSILON = 1e-12;
+    //Relative slack above Karp's mean when finding its cycle, tried up to three times, each 1000 times larger
+    protected static final double KARP_SLACK = 1e-9;
+    protected final int n;
+    //Edges between vertices that can be on a cycle, in compressed rows: offsets[v] to offsets[v + 1]
+    protected final int[] offsets, targets;
+    protected final double[] weights;
+    protected double mean;
+    protected int[] cycle;
+    protected int iterations;
+    protected boolean usedKarp;
+
+    /**
+     * Construct a new minimum mean cycle solver
+     * @param vertexCount the number of vertices
+     * @param edgeFrom index of the start vertex of each edge
+     * @param edgeTo index of the end vertex of each edge
+     * @param edgeWeights weight of each edge
+     * @param edgeCount the number of edges to use
+     */
+    public MinimumMeanCycle(int vertexCount, int[] edgeFrom, int[] edgeTo, double[] edgeWeights, int edgeCount) {
+        n = vertexCount;
+
+        //Prune vertices with no edges out, repeatedly, as no cycle passes through them
+        int[] outDegree = new int[n];
+        int[] inOffsets = new int[n + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            outDegree[edgeFrom[e]]++;
+            inOffsets[edgeTo[e] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            inOffsets[v + 1] += inOffsets[v];
+        }
+        int[] inSources = new int[edgeCount];
+        int[] inNext = Arrays.copyOf(inOffsets, n);
+        for (int e = 0; e < edgeCount; e++) {
+            inSources[inNext[edgeTo[e]]++] = edgeFrom[e];
+        }
+        boolean[] pruned = new boolean[n];
+        int[] queue = new int[n];
+        int tail = 0;
+        for (int v = 0; v < n; v++) {
+            if (outDegree[v] == 0) {
+                pruned[v] = true;
+                queue[tail++] = v;
+            }
+        }
+        for (int head = 0; head < tail; head++) {
+            int v = queue[head];
+            for (int k = inOffsets[v]; k < inOffsets[v + 1]; k++) {
+                int u = inSources[k];
+                if (!pruned[u] && --outDegree[u] == 0) {
+                    pruned[u] = true;
+                    queue[tail++] = u;
+                }
+            }
+        }
+
+        //Compressed rows of the remaining edges
+        offsets = new int[n + 1];
+        int kept = 0;
+        for (int e = 0; e < edgeCount; e++) {
+            if (!pruned[edgeFrom[e]] && !pruned[edgeTo[e]]) {
+                offsets[edgeFrom[e] + 1]++;
+                kept++;
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        targets = new int[kept];
+        weights = new double[kept];
+        int[] next = Arrays.copyOf(offsets, n);
+        for (int e = 0; e < edgeCount; e++) {
+            if (!pruned[edgeFrom[e]] && !pruned[edgeTo[e]]) {
+                targets[next[edgeFrom[e]]] = edgeTo[e];
+                weights[next[edgeFrom[e]]++] = edgeWeights[e];
+            }
+        }
+        mean = Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Construct a new minimum mean cycle solver over a graph built by WeightedGraphBuilder
+     * @param weightedGraph the weighted graph
+     */
+    public MinimumMeanCycle(WeightedGraph<?> weightedGraph) {
+        this(weightedGraph.vertexCount(), weightedGraph.getEdgeFrom(), weightedGraph.getEdgeTo(),
+                weightedGraph.getEdgeWeights(), weightedGraph.edgeCount());
+    }
+
+    /**
+     * Find the minimum mean cycle, with Howard's policy iteration or, if it does not converge, Karp's algorithm
+     * @return whether the graph has any cycle
+     */
+    public boolean solve() {
+        usedKarp = !howard();
+        if (usedKarp) {
+            karp();
+        }
+        return cycle != null;
+    }
+
+    /**
+     * Howard's policy iteration
+     * @return whether it converged within MAX_ITERATIONS (or there is no cycle)
+     */
+    protected boolean howard() {
+        int[] policy = new int[n]; //position of each vertex's chosen edge, or -1 if pruned
+        double[] eta = new double[n]; //mean of the policy cycle each vertex leads to
+        double[] x = new double[n]; //distance to that cycle, relative to its mean
+        int[] state = new int[n]; //0 unseen, -walk while on a walk, 1 seen, 2 valued
+        int[] reverseOffsets = new int[n + 1];
+        int[] reverse = new int[n];
+        int[] queue = new int[n];
+        boolean any = false;
+
+        //Start with the least weight edge out of each vertex
+        for (int u = 0; u < n; u++) {
+            policy[u] = -1;
+            for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+                if (policy[u] < 0 || weights[k] < weights[policy[u]]) {
+                    policy[u] = k;
+                }
+            }
+            any |= policy[u] >= 0;
+        }
+        if (!any) {
+            return true;
+        }
+
+        for (iterations = 1; iterations <= MAX_ITERATIONS; iterations++) {
+            //Value determination: each policy cycle's mean, then each vertex's value back along the policy
+            Arrays.fill(state, 0);
+            int tail = 0;
+            int walk = 0;
+            for (int u = 0; u < n; u++) {
+                if (policy[u] < 0 || state[u] != 0) {
+                    continue;
+                }
+                //Follow the policy until a vertex seen on this walk (a new cycle) or an earlier one
+                walk++;
+                int root = -1;
+                int v = u;
+                while (state[v] == 0) {
+                    state[v] = -walk;
+                    v = targets[policy[v]];
+                }
+                if (state[v] == -walk) {
+                    double sum = 0;
+                    int length = 0;
+                    int w = v;
+                    do {
+                        sum += weights[policy[w]];
+                        length++;
+                        w = targets[policy[w]];
+                    } while (w != v);
+                    double cycleMean = sum / length;
+                    //The cycle's vertices, from v, take its mean; v is the root with value 0
+                    w = v;
+                    do {
+                        eta[w] = cycleMean;
+                        w = targets[policy[w]];
+                    } while (w != v);
+                    x[v] = 0;
+                    queue[tail++] = v;
+                    root = v;
+                }
+                //Mark the walk's vertices as seen by any walk
+                for (int w = u; state[w] == -walk; w = targets[policy[w]]) {
+                    state[w] = 1;
+                }
+                if (root >= 0) {
+                    state[root] = 2;
+                }
+            }
+            //Reverse policy edges, to reach every vertex from its cycle's root
+            Arrays.fill(reverseOffsets, 0);
+            for (int u = 0; u < n; u++) {
+                if (policy[u] >= 0) {
+                    reverseOffsets[targets[policy[u]] + 1]++;
+                }
+            }
+            for (int v = 0; v < n; v++) {
+                reverseOffsets[v + 1] += reverseOffsets[v];
+            }
+            int[] reverseNext = Arrays.copyOf(reverseOffsets, n);
+            for (int u = 0; u < n; u++) {
+                if (policy[u] >= 0) {
+                    reverse[reverseNext[targets[policy[u]]]++] = u;
+                }
+            }
+            for (int head = 0; head < tail; head++) {
+                int v = queue[head];
+                for (int k = reverseOffsets[v]; k < reverseOffsets[v + 1]; k++) {
+                    int u = reverse[k];
+                    if (state[u] == 2) {
+                        continue;
+                    }
+                    state[u] = 2;
+                    eta[u] = eta[v];
+                    x[u] = weights[policy[u]] - eta[v] + x[v];
+                    queue[tail++] = u;
+                }
+            }
+
+            //Policy improvement: first towards lower mean cycles
+            boolean changed = false;
+            for (int u = 0; u < n; u++) {
+                if (policy[u] < 0) {
+                    continue;
+                }
+                int best = policy[u];
+                for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+                    if (eta[targets[k]] < eta[targets[best]] - EPSILON) {
+                        best = k;
+                    }
+                }
+                if (eta[targets[best]] < eta[u] - EPSILON) {
+                    policy[u] = best;
+                    changed = true;
+                }
+            }
+            //Then, if none, towards shorter paths to the same mean cycle
+            if (!changed) {
+                for (int u = 0; u < n; u++) {
+                    if (policy[u] < 0) {
+                        continue;
+                    }
+                    int best = policy[u];
+                    double bestValue = x[u];
+                    for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+                        int v = targets[k];
+                        if (Math.abs(eta[v] - eta[u]) <= EPSILON) {
+                            double value = weights[k] - eta[u] + x[v];
+                            if (value < bestValue - EPSILON) {
+                                best = k;
+                                bestValue = value;
+                            }
+                        }
+                    }
+                    if (best != policy[u]) {
+                        policy[u] = best;
+                        changed = true;
+                    }
+                }
+            }
+
+            if (!changed) {
+                //Converged: the least mean cycle of the policy is the answer
+                int best = -1;
+                for (int u = 0; u < n; u++) {
+                    if (policy[u] >= 0 && (best < 0 || eta[u] < eta[best])) {
+                        best = u;
+                    }
+                }
+                cycle = policyCycle(best, policy);
+                mean = eta[best];
+                return true;
+            }
+        }
+        iterations = MAX_ITERATIONS;
+        return false;
+    }
+
+    /**
+     * Follow a policy from a vertex until it repeats, returning the cycle reached in path order
+     */
+    private int[] policyCycle(int start, int[] policy) {
+        int v = start;
+        for (int k = 0; k < n; k++) { //After n steps the walk must be on the cycle
+            v = targets[policy[v]];
+        }
+        int length = 0;
+        int w = v;
+        do {
+            length++;
+            w = targets[policy[w]];
+        } while (w != v);
+        int[] result = new int[length];
+        for (int k = 0; k < length; k++) {
+            result[k] = w;
+            w = targets[policy[w]];
+        }
+        return result;
+    }
+
+    /**
+     * Karp's algorithm: D[k][v] is the least weight of a k edge walk ending at v (from any vertex),
+     * and the minimum mean is min over v of max over k of (D[n][v] - D[k][v]) / (n - k)
+     * The rows are computed once to get D[n], then again for the max over k, so only two are held at a time
+     */
+    protected void karp() {
+        double[] previous = new double[n], next = new double[n]; //D[0] is 0 everywhere
+        for (int k = 1; k <= n; k++) {
+            karpRow(previous, next);
+            double[] row = previous;
+            previous = next;
+            next = row;
+        }
+        double[] last = previous.clone();
+        double[] worst = new double[n];
+        Arrays.fill(worst, Double.NEGATIVE_INFINITY);
+        Arrays.fill(previous, 0);
+        for (int k = 0; k < n; k++) {
+            for (int v = 0; v < n; v++) {
+                if (last[v] != Double.POSITIVE_INFINITY && previous[v] != Double.POSITIVE_INFINITY) {
+                    worst[v] = Math.max(worst[v], (last[v] - previous[v]) / (n - k));
+                }
+            }
+            karpRow(previous, next);
+            double[] row = previous;
+            previous = next;
+            next = row;
+        }
+        mean = Double.POSITIVE_INFINITY;
+        boolean found = false;
+        for (int v = 0; v < n; v++) {
+            if (last[v] != Double.POSITIVE_INFINITY && worst[v] < mean) {
+                mean = worst[v];
+                found = true;
+            }
+        }
+        if (!found) {
+            return;
+        }
+        //Less slightly more than the mean, the minimum mean cycle is negative, and any negative cycle is within the slack
+        double slack = KARP_SLACK * (1 + Math.abs(mean));
+        for (int attempt = 0; attempt < 3 && cycle == null; attempt++, slack *= 1000) {
+            cycle = shiftedNegativeCycle(mean + slack);
+        }
+        if (cycle != null) {
+            double sum = 0;
+            for (int k = 0; k < cycle.length; k++) {
+                sum += edgeWeight(cycle[k], cycle[(k + 1) % cycle.length]);
+            }
+            mean = sum / cycle.length;
+        }
+    }
+
+    /**
+     * Compute D[k] from D[k - 1] for Karp's algorithm
+     */
+    private void karpRow(double[] previous, double[] next) {
+        Arrays.fill(next, Double.POSITIVE_INFINITY);
+        for (int u = 0; u < n; u++) {
+            if (previous[u] == Double.POSITIVE_INFINITY) {
+                continue;
+            }
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                double distance = previous[u] + weights[e];
+                if (distance < next[targets[e]]) {
+                    next[targets[e]] = distance;
+                }
+            }
+        }
+    }
+
+    /**
+     * Bellman-Ford from every vertex at once over the weights less a shift, in O(vertices * edges)
+     * @param shift the amount taken off every edge weight
+     * @return a cycle that is negative after the shift (so its mean is below the shift) in path order, or null if none
+     */
+    private int[] shiftedNegativeCycle(double shift) {
+        double[] distance = new double[n];
+        int[] parent = new int[n];
+        Arrays.fill(parent, -1);
+        int relaxed = -1;
+        //A relaxation in pass n means a negative cycle, as shortest paths from a virtual source need n - 1 passes
+        for (int pass = 0; pass < n; pass++) {
+            relaxed = -1;
+            for (int u = 0; u < n; u++) {
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    double candidate = distance[u] + (weights[e] - shift);
+                    if (candidate < distance[targets[e]]) {
+                        distance[targets[e]] = candidate;
+                        parent[targets[e]] = u;
+                        relaxed = targets[e];
+                    }
+                }
+            }
+            if (relaxed < 0) {
+                return null;
+            }
+        }
+        //Walking back n parents from the last vertex relaxed ends on the cycle
+        int v = relaxed;
+        for (int k = 0; k < n && v >= 0; k++) {
+            v = parent[v];
+        }
+        if (v < 0) {
+            return null;
+        }
+        int length = 0;
+        int w = v;
+        do {
+            length++;
+            w = parent[w];
+        } while (w != v && w >= 0 && length <= n);
+        if (w != v) {
+            return null;
+        }
+        //The parents run against the path order
+        int[] result = new int[length];
+        for (int k = length - 1; k >= 0; k--) {
+            result[k] = w;
+            w = parent[w];
+        }
+        return result;
+    }
+
+    /**
+     * @return the least weight of an edge from u to v
+     */
+    private double edgeWeight(int u, int v) {
+        double weight = Double.POSITIVE_INFINITY;
+        for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+            if (targets[e] == v) {
+                weight = Math.min(weight, weights[e]);
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * @return the mean weight per edge of the minimum mean cycle (infinity if there is no cycle)
+     */
+    public double mean() {
+        return mean;
+    }
+
+    /**
+     * @return the profit per leg of the best cycle, e^-mean (above 1 means arbitrage)
+     */
+    public double profitPerLeg() {
+        return Math.exp(-mean);
+    }
+
+    /**
+     * @return whether the minimum mean cycle is an arbitrage (negative mean)
+     */
+    public boolean isArbitrage() {
+        return mean < 0;
+    }
+
+    /**
+     * @return the minimum mean cycle's vertices in path order (the last leads back to the first), or null if none
+     */
+    public int[] cycle() {
+        return cycle == null ? null : cycle.clone();
+    }
+
+    /**
+     * @return the number of Howard iterations run
+     */
+    public int iterations() {
+        return iterations;
+    }
+
+    /**
+     * @return whether Howard did not converge, so Karp's algorithm was used
+     */
+    public boolean usedKarp() {
+        return usedKarp;
+    }
+}
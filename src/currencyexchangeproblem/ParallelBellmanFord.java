@@ -0,0 +1,352 @@
+package currencyexchangeproblem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class runs Bellman-Ford relaxation passes in parallel for very large graphs:
+ * - The edge list is split into one contiguous range per worker thread
+ * - Shortest path weights are stored as long bits, and lowered with compare-and-set so no update is lost
+ * - Workers meet at a barrier after each round, and stop early once a round changes nothing
+ * Negative weight closed path detection uses an additional round, as in BestConversionFinder.relaxEdges
+ * Last edges written by the workers can be left stale by lost races, so once the rounds are done:
+ * - Without a negative weight closed path, the last edges are rebuilt sequentially, by a breadth-first search from
+ *   the source over tight edges (weight of start + weight of edge = weight of end); this gives a shortest path tree,
+ *   as the sequential solver's are, even where zero weight closed paths make several edges tight
+ * - With one, each stale last edge is replaced with an edge whose start weight plus edge weight is at most the end
+ *   vertex's weight, so walking back along the last edges never finds a closed path of positive weight
+ * @author Tamati Rudd 18045626
+ */
+public class ParallelBellmanFord implements AutoCloseable {
+    //Below this many edges per worker, the sequential solver is faster than coordinating threads
+    protected static final int MIN_EDGES_PER_WORKER = 16384;
+    private static final int RELAX = 0, CHECK = 1, FIX = 2, DONE = 3;
+    protected int threads;
+    protected ExecutorService workers;
+    
+    /**
+     * Construct a new parallel solver
+     * @param threads the number of worker threads
+     */
+    public ParallelBellmanFord(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("at least one thread is needed");
+        }
+        this.threads = threads;
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "parallel-bellman-ford");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * The Bellman-Ford relaxation passes, split across the worker threads
+     * Takes the same arguments, and gives the same results, as BestConversionFinder.relaxEdges
+     * @param vertexCount the number of vertexes
+     * @param edgeFrom index of the start vertex of each edge
+     * @param edgeTo index of the end vertex of each edge
+     * @param edgeWeights weight of each edge
+     * @param edgeCount the number of edges to use
+     * @param source index of the starting vertex
+     * @param shortestPaths filled with the shortest path weight to each vertex (Double.MAX_VALUE if unreachable)
+     * @param leastEdges filled with the index of the last edge on the shortest path to each vertex (-1 if none)
+     * @return true if a negative weight closed path (an arbitrage) is reachable from the source
+     */
+    public synchronized boolean relaxEdges(int vertexCount, int[] edgeFrom, int[] edgeTo, double[] edgeWeights, int edgeCount,
+            int source, double[] shortestPaths, int[] leastEdges) {
+        int workerCount = Math.min(threads, edgeCount / MIN_EDGES_PER_WORKER);
+        if (workerCount <= 1) {
+            return BestConversionFinder.relaxEdges(vertexCount, edgeFrom, edgeTo, edgeWeights, edgeCount, source,
+                    shortestPaths, leastEdges);
+        }
+        Run run = new Run(vertexCount, edgeFrom, edgeTo, edgeWeights, source, workerCount);
+        long start = SolverMetrics.ENABLED ? System.nanoTime() : 0;
+        
+        //Start one worker per contiguous range of edges, and wait for them all to finish
+        List<Future<Void>> results = new ArrayList<>(workerCount);
+        for (int w = 0; w < workerCount; w++) {
+            int low = (int) ((long) edgeCount * w / workerCount);
+            int high = (int) ((long) edgeCount * (w + 1) / workerCount);
+            results.add(workers.submit(run.worker(low, high)));
+        }
+        try {
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            run.barrier.reset();
+            throw new IllegalStateException("interrupted while relaxing edges", e);
+        } catch (ExecutionException e) {
+            run.barrier.reset();
+            throw new IllegalStateException("relaxation worker failed", e.getCause());
+        }
+        
+        //Copy the results out of the atomic arrays, rebuilding the shortest path tree if converged
+        for (int v = 0; v < vertexCount; v++) {
+            shortestPaths[v] = Double.longBitsToDouble(run.shortestPaths.get(v));
+            leastEdges[v] = run.leastEdges.get(v);
+        }
+        if (!run.negativeCycle) {
+            buildTree(vertexCount, edgeFrom, edgeTo, edgeWeights, edgeCount, source, shortestPaths, leastEdges);
+        }
+        if (SolverMetrics.ENABLED) {
+            SolverMetrics.BELLMAN_FORD.recordPhase(BestConversionFinder.RELAX_PHASE, System.nanoTime() - start);
+            SolverMetrics.BELLMAN_FORD.addPasses(run.rounds);
+            SolverMetrics.BELLMAN_FORD.addEdgeScans((long) run.rounds * edgeCount);
+            if (run.negativeCycle) {
+                SolverMetrics.BELLMAN_FORD.addResultsFound(1);
+            }
+        }
+        return run.negativeCycle;
+    }
+    
+    /**
+     * Rebuild the last edges of converged shortest paths as a tree, by breadth-first search from the source over the
+     * tight edges, so no vertex's last edge leads back into its own path
+     */
+    static void buildTree(int vertexCount, int[] edgeFrom, int[] edgeTo, double[] edgeWeights, int edgeCount,
+            int source, double[] shortestPaths, int[] leastEdges) {
+        //Tight edges in compressed rows by start vertex
+        int[] offsets = new int[vertexCount + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            if (isTight(e, edgeFrom, edgeTo, edgeWeights, source, shortestPaths)) {
+                offsets[edgeFrom[e] + 1]++;
+            }
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] tight = new int[offsets[vertexCount]];
+        int[] next = Arrays.copyOf(offsets, vertexCount);
+        for (int e = 0; e < edgeCount; e++) {
+            if (isTight(e, edgeFrom, edgeTo, edgeWeights, source, shortestPaths)) {
+                tight[next[edgeFrom[e]]++] = e;
+            }
+        }
+        
+        Arrays.fill(leastEdges, 0, vertexCount, -1);
+        boolean[] treed = new boolean[vertexCount];
+        int[] queue = new int[vertexCount];
+        int head = 0, tail = 0;
+        treed[source] = true;
+        queue[tail++] = source;
+        while (true) {
+            while (head < tail) {
+                int u = queue[head++];
+                for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+                    int v = edgeTo[tight[k]];
+                    if (!treed[v]) {
+                        treed[v] = true;
+                        leastEdges[v] = tight[k];
+                        queue[tail++] = v;
+                    }
+                }
+            }
+            //Rounding can leave a reached vertex with no tight path from the source: attach each such vertex by
+            //its lowest weight edge from the tree, and carry on the search from there
+            int attached = tail;
+            for (int e = 0; e < edgeCount; e++) {
+                int v = edgeTo[e];
+                if (treed[edgeFrom[e]] && !treed[v] && shortestPaths[v] != Double.MAX_VALUE) {
+                    int least = leastEdges[v];
+                    if (least < 0 || weightVia(edgeFrom[e], e, edgeWeights, shortestPaths)
+                            < weightVia(edgeFrom[least], least, edgeWeights, shortestPaths)) {
+                        if (least < 0) {
+                            queue[tail++] = v;
+                        }
+                        leastEdges[v] = e;
+                    }
+                }
+            }
+            if (tail == attached) {
+                return;
+            }
+            for (int k = attached; k < tail; k++) {
+                treed[queue[k]] = true;
+            }
+        }
+    }
+    
+    private static boolean isTight(int e, int[] edgeFrom, int[] edgeTo, double[] edgeWeights, int source,
+            double[] shortestPaths) {
+        int to = edgeTo[e];
+        return to != source && shortestPaths[edgeFrom[e]] != Double.MAX_VALUE
+                && shortestPaths[edgeFrom[e]] + edgeWeights[e] == shortestPaths[to];
+    }
+    
+    private static double weightVia(int from, int e, double[] edgeWeights, double[] shortestPaths) {
+        return shortestPaths[from] + edgeWeights[e];
+    }
+    
+    /**
+     * Stop the worker threads
+     */
+    @Override
+    public void close() {
+        workers.shutdown();
+    }
+    
+    /**
+     * The shared state of one parallel solve
+     */
+    protected static class Run {
+        protected final int vertexCount;
+        protected final int[] edgeFrom, edgeTo;
+        protected final double[] edgeWeights;
+        protected final AtomicLongArray shortestPaths; //double bits of the shortest path weight to each vertex
+        protected final AtomicIntegerArray leastEdges;
+        protected final CyclicBarrier barrier;
+        protected volatile boolean changed; //set by any worker that relaxes an edge in the current round
+        protected volatile boolean negativeCycle;
+        protected volatile int state = RELAX;
+        protected int rounds = 0; //only updated by the barrier action
+        
+        protected Run(int vertexCount, int[] edgeFrom, int[] edgeTo, double[] edgeWeights, int source, int workerCount) {
+            this.vertexCount = vertexCount;
+            this.edgeFrom = edgeFrom;
+            this.edgeTo = edgeTo;
+            this.edgeWeights = edgeWeights;
+            shortestPaths = new AtomicLongArray(vertexCount);
+            leastEdges = new AtomicIntegerArray(vertexCount);
+            long unreached = Double.doubleToRawLongBits(Double.MAX_VALUE);
+            for (int v = 0; v < vertexCount; v++) {
+                shortestPaths.set(v, unreached);
+                leastEdges.set(v, -1);
+            }
+            shortestPaths.set(source, Double.doubleToRawLongBits(0.0));
+            barrier = new CyclicBarrier(workerCount, this::endOfStep);
+        }
+        
+        /**
+         * Run by the last worker to reach the barrier: decide what all the workers do next
+         */
+        private void endOfStep() {
+            if (state == RELAX) {
+                rounds++;
+                if (!changed) { //Converged, so there is no negative weight closed path (the tree is built after)
+                    state = DONE;
+                } else if (rounds == vertexCount) { //Still changing, so check with an additional round
+                    state = CHECK;
+                }
+                changed = false;
+            } else if (state == CHECK) {
+                rounds++;
+                state = negativeCycle ? FIX : DONE;
+            } else {
+                state = DONE;
+            }
+        }
+        
+        /**
+         * @param low first edge of the worker's range
+         * @param high end (exclusive) of the worker's range
+         * @return a worker that performs each step on its range of edges until the solve is done
+         */
+        protected Callable<Void> worker(int low, int high) {
+            return () -> {
+                long relaxations = 0;
+                while (state != DONE) {
+                    int step = state;
+                    if (step == RELAX) {
+                        relaxations += relax(low, high);
+                    } else if (step == CHECK) {
+                        check(low, high);
+                    } else {
+                        fix(low, high);
+                    }
+                    try {
+                        barrier.await();
+                    } catch (BrokenBarrierException e) {
+                        throw new IllegalStateException("another relaxation worker failed", e);
+                    }
+                }
+                if (SolverMetrics.ENABLED) {
+                    SolverMetrics.BELLMAN_FORD.addRelaxations(relaxations);
+                }
+                return null;
+            };
+        }
+        
+        /**
+         * Relax a range of edges, lowering shortest path weights with compare-and-set
+         * @return the number of successful relaxations
+         */
+        private long relax(int low, int high) {
+            long relaxations = 0;
+            boolean relaxed = false;
+            for (int e = low; e < high; e++) {
+                double fromWeight = Double.longBitsToDouble(shortestPaths.get(edgeFrom[e]));
+                if (fromWeight == Double.MAX_VALUE) {
+                    continue;
+                }
+                double candidate = fromWeight + edgeWeights[e];
+                long current = shortestPaths.get(edgeTo[e]);
+                while (candidate < Double.longBitsToDouble(current)) {
+                    if (shortestPaths.compareAndSet(edgeTo[e], current, Double.doubleToRawLongBits(candidate))) {
+                        //May be overtaken by a concurrent lower weight, in which case fix() repairs it
+                        leastEdges.set(edgeTo[e], e);
+                        relaxed = true;
+                        relaxations++;
+                        break;
+                    }
+                    current = shortestPaths.get(edgeTo[e]);
+                }
+            }
+            if (relaxed) {
+                changed = true;
+            }
+            return relaxations;
+        }
+        
+        /**
+         * Check a range of edges for any that could still be relaxed: a negative weight closed path
+         */
+        private void check(int low, int high) {
+            for (int e = low; e < high && !negativeCycle; e++) {
+                if (weightVia(e) < Double.longBitsToDouble(shortestPaths.get(edgeTo[e]))) {
+                    negativeCycle = true;
+                }
+            }
+        }
+        
+        /**
+         * Once a negative weight closed path is found (and weights no longer change), replace any last edge left by
+         * a lost race, whose start weight plus edge weight is above the end vertex's weight
+         * The edge that set the end vertex's weight is never above it, as start weights only fall, so one is found
+         */
+        private void fix(int low, int high) {
+            for (int e = low; e < high; e++) {
+                int to = edgeTo[e];
+                double weight = Double.longBitsToDouble(shortestPaths.get(to));
+                if (weight == Double.MAX_VALUE || weightVia(e) > weight) {
+                    continue;
+                }
+                int least = leastEdges.get(to);
+                if (least < 0 || weightVia(least) > weight) {
+                    leastEdges.compareAndSet(to, least, e);
+                }
+            }
+        }
+        
+        /**
+         * @param e an edge
+         * @return the weight of the shortest path to the start of the edge, plus the edge weight
+         */
+        private double weightVia(int e) {
+            double fromWeight = Double.longBitsToDouble(shortestPaths.get(edgeFrom[e]));
+            return (fromWeight == Double.MAX_VALUE) ? Double.MAX_VALUE : fromWeight + edgeWeights[e];
+        }
+    }
+}
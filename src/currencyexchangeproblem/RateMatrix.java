@@ -0,0 +1,199 @@
+package currencyexchangeproblem;
+
+import java.util.Arrays;
+
+/**
+ * This class:
+ * - Stores an n x n table of exchange rates and their graph edge weights in primitive arrays
+ * - Recomputes only the weight of a cell whose rate changes
+ * - Records the changed cells in a dirty set, so solvers can update only what changed
+ * A rate of 0 means no exchange, and the diagonal (same currency) never has an edge
+ * @author Tamati Rudd 18045626
+ */
+public class RateMatrix implements WeightTable {
+    //Largest n for which every cell (i * n + j) fits in an int
+    public static final int MAX_SIZE = 46340;
+    protected int n;
+    protected double[][] rates;
+    protected double[][] weights;
+    protected long[] dirtyFlags; //one bit per cell, set while the cell is in the dirty set
+    protected int[] dirtyCells; //cells (i * n + j) changed since the dirty set was last cleared
+    protected int dirtyCount;
+    
+    /**
+     * Construct a new rate matrix with no exchanges
+     * @param n the number of currencies, at most MAX_SIZE
+     */
+    public RateMatrix(int n) {
+        if (n < 0 || n > MAX_SIZE) {
+            throw new IllegalArgumentException("a rate matrix holds 0 to " + MAX_SIZE + " currencies, not " + n);
+        }
+        this.n = n;
+        rates = new double[n][n];
+        weights = new double[n][n];
+        for (double[] row : weights) {
+            Arrays.fill(row, Double.POSITIVE_INFINITY);
+        }
+        dirtyFlags = new long[(n * n + 63) / 64];
+        dirtyCells = new int[Math.max(n, 16)];
+        dirtyCount = 0;
+    }
+    
+    /**
+     * Construct a new rate matrix from an n x n exchange rate table
+     * The dirty set starts empty
+     * @param exchangeRates n x n exchange rate table
+     */
+    public RateMatrix(double[][] exchangeRates) {
+        this(exchangeRates.length);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                rates[i][j] = exchangeRates[i][j];
+                weights[i][j] = weightFor(i, j, exchangeRates[i][j]);
+            }
+        }
+    }
+    
+    /**
+     * Calculate the graph edge weight for an exchange rate
+     * @param i table row (from currency)
+     * @param j table column (to currency)
+     * @param rate the exchange rate
+     * @return ln(1 / rate), or Double.POSITIVE_INFINITY if there is no exchange
+     */
+    public static double weightFor(int i, int j, double rate) {
+        //Only include a calculated weight if the conversion isn't to the same currency or 0 (no exchange)
+        if (i != j && rate > 0) {
+            return Math.log(1 / rate);
+        } else { //Put in a filler weight
+            return Double.POSITIVE_INFINITY;
+        }
+    }
+    
+    /**
+     * Update one exchange rate, recomputing only its weight
+     * The cell is added to the dirty set if its weight changes
+     * @param i table row (from currency)
+     * @param j table column (to currency)
+     * @param rate the new exchange rate (0 to remove the exchange)
+     */
+    public void setRate(int i, int j, double rate) {
+        if (rates[i][j] == rate) {
+            return;
+        }
+        setRate(i, j, rate, weightFor(i, j, rate));
+    }
+    
+    /**
+     * Update one exchange rate with its weight already converted (e.g. by an earlier TickPipeline stage)
+     * The cell is added to the dirty set if its weight changes
+     * Package-private, as the caller must keep the weight equal to weightFor(i, j, rate)
+     * @param i table row (from currency)
+     * @param j table column (to currency)
+     * @param rate the new exchange rate (0 to remove the exchange)
+     * @param weight weightFor(i, j, rate)
+     */
+    void setRate(int i, int j, double rate, double weight) {
+        rates[i][j] = rate;
+        if (weights[i][j] != weight) {
+            weights[i][j] = weight;
+            markDirty(i * n + j);
+        }
+    }
+    
+    /**
+     * Add a cell to the dirty set, if not already in it
+     * @param cell the cell (i * n + j)
+     */
+    protected void markDirty(int cell) {
+        long bit = 1L << cell;
+        if ((dirtyFlags[cell >>> 6] & bit) == 0) {
+            dirtyFlags[cell >>> 6] |= bit;
+            if (dirtyCount == dirtyCells.length) {
+                dirtyCells = Arrays.copyOf(dirtyCells, 2 * dirtyCount);
+            }
+            dirtyCells[dirtyCount++] = cell;
+        }
+    }
+    
+    /**
+     * @return the number of cells changed since the dirty set was last cleared
+     */
+    public int dirtyCount() {
+        return dirtyCount;
+    }
+    
+    /**
+     * @param index index into the dirty set, from 0 to dirtyCount() - 1
+     * @return the changed cell (i * n + j), in the order cells were first changed
+     */
+    public int dirtyCell(int index) {
+        if (index < 0 || index >= dirtyCount) {
+            throw new IndexOutOfBoundsException("no dirty cell at " + index);
+        }
+        return dirtyCells[index];
+    }
+    
+    /**
+     * Empty the dirty set, once downstream solvers have consumed it
+     * Costs O(changed cells) rather than O(n^2)
+     */
+    public void clearDirty() {
+        for (int k = 0; k < dirtyCount; k++) {
+            dirtyFlags[dirtyCells[k] >>> 6] = 0;
+        }
+        dirtyCount = 0;
+    }
+    
+    /**
+     * @param cell a cell (i * n + j)
+     * @return the table row (from currency) of the cell
+     */
+    public int rowOf(int cell) {
+        return cell / n;
+    }
+    
+    /**
+     * @param cell a cell (i * n + j)
+     * @return the table column (to currency) of the cell
+     */
+    public int columnOf(int cell) {
+        return cell % n;
+    }
+    
+    /**
+     * @return the number of currencies
+     */
+    @Override
+    public int size() {
+        return n;
+    }
+    
+    /**
+     * @param i table row (from currency)
+     * @param j table column (to currency)
+     * @return the exchange rate from currency i to currency j
+     */
+    public double rate(int i, int j) {
+        return rates[i][j];
+    }
+    
+    /**
+     * @param i table row (from currency)
+     * @param j table column (to currency)
+     * @return the weight of the edge from currency i to currency j
+     */
+    @Override
+    public double weight(int i, int j) {
+        return weights[i][j];
+    }
+    
+    /**
+     * Get the n x n table of graph edge weights, for solvers such as ArbitrageFinder
+     * This is the live table rather than a copy, so it changes as rates are set
+     * @return n x n table of graph edge weights
+     */
+    public double[][] weights() {
+        return weights;
+    }
+}
@@ -0,0 +1,324 @@
+package currencyexchangeproblem;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * This class streams arbitrage and shortest path results to an OutputStream or WritableByteChannel:
+ * - JSON_LINES writes one compact JSON object per line (infinite weights and missing vertices are null)
+ * - BINARY writes big-endian records, each starting with a record type byte, after a MAGIC and VERSION header
+ * Records are encoded into one reused buffer and written out whenever it fills, so large results are never
+ * held as strings
+ * Record layouts:
+ * - CURRENCIES_RECORD: {"type":"currencies","labels":[...]} / int count, then per label: short length, UTF-8 bytes
+ * - ARBITRAGE_RECORD: {"type":"arbitrage","vertex":i,"weight":w,"cycle":[...]} / int i, double w, int length, int[] cycle
+ * - PATH_RECORD: {"type":"path","source":s,"target":t,"weight":w,"previous":p} / int s, int t, double w, int p
+ * - DISTANCES_RECORD: {"type":"distances","from":i,"weight":[...],"previous":[...]} / int i, int n, double[n], int[n]
+ * @author Tamati Rudd 18045626
+ */
+public class ResultWriter implements Closeable, Flushable {
+    public enum Format { JSON_LINES, BINARY }
+    public static final int MAGIC = 0x43585257; //"CXRW"
+    public static final int VERSION = 1;
+    public static final byte CURRENCIES_RECORD = 1;
+    public static final byte ARBITRAGE_RECORD = 2;
+    public static final byte PATH_RECORD = 3;
+    public static final byte DISTANCES_RECORD = 4;
+    protected static final int BUFFER_SIZE = 1 << 16;
+    public static final int MAX_LABEL_BYTES = 65535; //binary labels are prefixed by an unsigned short length
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    protected final WritableByteChannel channel;
+    protected final Format format;
+    protected final ByteBuffer buffer;
+    protected final StringBuilder number; //reused to format doubles without a String per value
+    
+    /**
+     * Construct a new result writer
+     * @param channel where to write the results
+     * @param format JSON_LINES or BINARY
+     * @throws IOException if the binary header cannot be written
+     */
+    public ResultWriter(WritableByteChannel channel, Format format) throws IOException {
+        this.channel = channel;
+        this.format = format;
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        number = new StringBuilder(32);
+        if (format == Format.BINARY) {
+            ensure(8);
+            buffer.putInt(MAGIC).putInt(VERSION);
+        }
+    }
+    
+    /**
+     * Construct a new result writer
+     * @param out where to write the results
+     * @param format JSON_LINES or BINARY
+     * @throws IOException if the binary header cannot be written
+     */
+    public ResultWriter(OutputStream out, Format format) throws IOException {
+        this(Channels.newChannel(out), format);
+    }
+    
+    /**
+     * Write the names of the currencies the indexes in later records refer to
+     * @param labels currency names, by index (at most MAX_LABEL_BYTES of UTF-8 each)
+     * @throws IOException if writing fails
+     */
+    public void writeCurrencies(String[] labels) throws IOException {
+        if (format == Format.BINARY) {
+            ensure(5);
+            buffer.put(CURRENCIES_RECORD).putInt(labels.length);
+            for (String label : labels) {
+                byte[] bytes = label.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+                if (bytes.length > MAX_LABEL_BYTES) {
+                    throw new IllegalArgumentException("currency label is over " + MAX_LABEL_BYTES + " bytes");
+                }
+                ensure(2);
+                buffer.putShort((short) bytes.length);
+                //A label can be longer than the buffer, so it is written in chunks
+                for (int offset = 0; offset < bytes.length; ) {
+                    if (!buffer.hasRemaining()) {
+                        flush();
+                    }
+                    int chunk = Math.min(buffer.remaining(), bytes.length - offset);
+                    buffer.put(bytes, offset, chunk);
+                    offset += chunk;
+                }
+            }
+        } else {
+            ascii("{\"type\":\"currencies\",\"labels\":[");
+            for (int i = 0; i < labels.length; i++) {
+                if (i > 0) {
+                    ascii(",");
+                }
+                jsonString(labels[i]);
+            }
+            ascii("]}\n");
+        }
+    }
+    
+    /**
+     * Write every arbitrage found by an arbitrage finder, with its cycle
+     * @param arbitrageFinder the arbitrage finder (findArbitrage is run if it has not been)
+     * @throws IOException if writing fails
+     */
+    public void writeArbitrage(ArbitrageFinder arbitrageFinder) throws IOException {
+        int count = arbitrageFinder.findArbitrage();
+        for (int k = 0; k < count; k++) {
+            int vertex = arbitrageFinder.arbitrageVertex(k);
+            double weight = arbitrageFinder.arbitrageWeight(k);
+            int[] cycle = arbitrageFinder.arbitrageCycle(vertex);
+            int length = cycle == null ? 0 : cycle.length;
+            if (format == Format.BINARY) {
+                ensure(17);
+                buffer.put(ARBITRAGE_RECORD).putInt(vertex).putDouble(weight).putInt(length);
+                for (int c = 0; c < length; c++) {
+                    ensure(4);
+                    buffer.putInt(cycle[c]);
+                }
+            } else {
+                ascii("{\"type\":\"arbitrage\",\"vertex\":");
+                integer(vertex);
+                ascii(",\"weight\":");
+                weight(weight);
+                ascii(",\"cycle\":[");
+                for (int c = 0; c < length; c++) {
+                    if (c > 0) {
+                        ascii(",");
+                    }
+                    integer(cycle[c]);
+                }
+                ascii("]}\n");
+            }
+        }
+    }
+    
+    /**
+     * Write single source shortest path results, as from BestConversionFinder.relaxEdges
+     * @param source the source vertex index
+     * @param shortestPaths shortest path weight to each vertex
+     * @param leastEdges last edge on the shortest path to each vertex, -1 if none
+     * @param edgeFrom index of the start vertex of each edge
+     * @param vertexCount the number of vertices
+     * @throws IOException if writing fails
+     */
+    public void writeShortestPaths(int source, double[] shortestPaths, int[] leastEdges, int[] edgeFrom,
+            int vertexCount) throws IOException {
+        for (int target = 0; target < vertexCount; target++) {
+            double weight = shortestPaths[target] == Double.MAX_VALUE ? Double.POSITIVE_INFINITY : shortestPaths[target];
+            int previous = leastEdges[target] < 0 ? -1 : edgeFrom[leastEdges[target]];
+            if (format == Format.BINARY) {
+                ensure(21);
+                buffer.put(PATH_RECORD).putInt(source).putInt(target).putDouble(weight).putInt(previous);
+            } else {
+                ascii("{\"type\":\"path\",\"source\":");
+                integer(source);
+                ascii(",\"target\":");
+                integer(target);
+                ascii(",\"weight\":");
+                weight(weight);
+                ascii(",\"previous\":");
+                vertex(previous);
+                ascii("}\n");
+            }
+        }
+    }
+    
+    /**
+     * Write the all pairs shortest path results of Floyd-Warshall, one record per row
+     * @param floydWarshall the solved Floyd-Warshall
+     * @throws IOException if writing fails
+     */
+    public void writeDistances(AllPairsFloydWarshall floydWarshall) throws IOException {
+        int n = floydWarshall.n;
+        for (int i = 0; i < n; i++) {
+            if (format == Format.BINARY) {
+                ensure(9);
+                buffer.put(DISTANCES_RECORD).putInt(i).putInt(n);
+                for (int j = 0; j < n; j++) {
+                    ensure(8);
+                    buffer.putDouble(floydWarshall.distance(i, j));
+                }
+                for (int j = 0; j < n; j++) {
+                    ensure(4);
+                    buffer.putInt(floydWarshall.previous(i, j));
+                }
+            } else {
+                ascii("{\"type\":\"distances\",\"from\":");
+                integer(i);
+                ascii(",\"weight\":[");
+                for (int j = 0; j < n; j++) {
+                    if (j > 0) {
+                        ascii(",");
+                    }
+                    weight(floydWarshall.distance(i, j));
+                }
+                ascii("],\"previous\":[");
+                for (int j = 0; j < n; j++) {
+                    if (j > 0) {
+                        ascii(",");
+                    }
+                    vertex(floydWarshall.previous(i, j));
+                }
+                ascii("]}\n");
+            }
+        }
+    }
+    
+    /**
+     * Write out everything buffered so far
+     * @throws IOException if writing fails
+     */
+    @Override
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+    
+    /**
+     * Flush and close the channel
+     * @throws IOException if writing fails
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+    
+    /**
+     * Make room for bytes in the buffer, writing it out if needed
+     */
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+    
+    /**
+     * Write a weight, as null if infinite or NaN (which JSON cannot represent)
+     */
+    private void weight(double weight) throws IOException {
+        if (Double.isInfinite(weight) || Double.isNaN(weight)) {
+            ascii("null");
+        } else {
+            number.setLength(0);
+            number.append(weight);
+            ascii(number);
+        }
+    }
+    
+    /**
+     * Write a vertex index, as null if there is none
+     */
+    private void vertex(int vertex) throws IOException {
+        if (vertex < 0) {
+            ascii("null");
+        } else {
+            integer(vertex);
+        }
+    }
+    
+    /**
+     * Write the decimal digits of an integer
+     */
+    private void integer(int value) throws IOException {
+        ensure(11);
+        long magnitude = value; //-Integer.MIN_VALUE does not fit in an int
+        if (magnitude < 0) {
+            buffer.put((byte) '-');
+            magnitude = -magnitude;
+        }
+        long divisor = 1;
+        while (magnitude / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            buffer.put((byte) ('0' + magnitude / divisor % 10));
+        }
+    }
+    
+    /**
+     * Write a JSON string, escaping quotes, backslashes and control characters
+     */
+    private void jsonString(String value) throws IOException {
+        number.setLength(0);
+        number.append('"');
+        for (int c = 0; c < value.length(); c++) {
+            char ch = value.charAt(c);
+            if (ch == '"' || ch == '\\') {
+                number.append('\\').append(ch);
+            } else if (ch < 0x20 || ch > 0x7e) {
+                number.append("\\u").append(HEX_DIGITS[ch >>> 12]).append(HEX_DIGITS[(ch >>> 8) & 0xf])
+                        .append(HEX_DIGITS[(ch >>> 4) & 0xf]).append(HEX_DIGITS[ch & 0xf]);
+            } else {
+                number.append(ch);
+            }
+        }
+        number.append('"');
+        ascii(number);
+    }
+    
+    /**
+     * Write ASCII characters (the only characters in the JSON this writes)
+     */
+    private void ascii(CharSequence text) throws IOException {
+        int length = text.length();
+        for (int c = 0; c < length; c++) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.put((byte) text.charAt(c));
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package currencyexchangeproblem;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class is a worker for ShardedArbitrageScan, normally run as its own process:
+ * - Connects to the coordinator over a localhost socket and receives one shard (a subgraph of currencies)
+ * - Runs Floyd-Warshall on the shard in place (compact mode), then replies with its local arbitrage cycles and the
+ *   shortest path weights between its boundary currencies (those with edges to or from other shards)
+ * - Boundary weights are summed in double precision along the paths found, so float rounding does not reach the
+ *   coordinator's boundary graph
+ * - Answers requests for the shortest path between two boundary currencies, until told to quit
+ * Currencies are sent as global indexes; within the shard they are indexed by position in the shard
+ * @author Tamati Rudd 18045626
+ */
+public class ShardWorker implements Runnable {
+    //Message types sent by the coordinator
+    protected static final int SHARD = 1;
+    protected static final int PATHS = 2;
+    protected static final int QUIT = 3;
+    protected final Socket socket;
+    protected int[] globalIds;
+    protected int[] boundary; //local indexes of the boundary currencies
+    protected ArbitrageFinder arbitrageFinder;
+
+    /**
+     * Construct a new worker
+     * @param socket a socket connected to the coordinator
+     */
+    public ShardWorker(Socket socket) {
+        this.socket = socket;
+    }
+
+    /**
+     * Serve the coordinator until it sends QUIT or disconnects
+     */
+    @Override
+    public void run() {
+        try (Socket s = socket;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            while (true) {
+                int message = in.readInt();
+                if (message == SHARD) {
+                    solveShard(in, out);
+                } else if (message == PATHS) {
+                    sendPaths(in, out);
+                } else {
+                    return;
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("shard worker failed", e);
+        }
+    }
+
+    /**
+     * Read a shard, solve it, and send back its local cycles and boundary distances
+     * Shard: int size, int[size] global ids, int edges, (int from, int to, double weight) per edge,
+     * int boundary count, int[] boundary local indexes
+     * Reply: int cycles, (double weight, int length, int[length] global ids) per cycle,
+     * double[boundary count * boundary count] boundary distances by row
+     */
+    protected void solveShard(DataInputStream in, DataOutputStream out) throws IOException {
+        int size = in.readInt();
+        globalIds = new int[size];
+        for (int i = 0; i < size; i++) {
+            globalIds[i] = in.readInt();
+        }
+        double[][] weights = new double[size][size];
+        for (double[] row : weights) {
+            Arrays.fill(row, AllPairsFloydWarshall.INFINITY);
+        }
+        int edges = in.readInt();
+        for (int e = 0; e < edges; e++) {
+            int i = in.readInt(), j = in.readInt();
+            weights[i][j] = in.readDouble();
+        }
+        boundary = new int[in.readInt()];
+        for (int b = 0; b < boundary.length; b++) {
+            boundary[b] = in.readInt();
+        }
+
+        //In place, unless the shard is too large for compact mode
+        arbitrageFinder = new ArbitrageFinder(weights, true);
+
+        //Local cycles, each sent once however many of its currencies found it
+        ArrayList<int[]> cycles = ShardedArbitrageScan.screenCycles(arbitrageFinder);
+        out.writeInt(cycles.size());
+        for (int[] cycle : cycles) {
+            out.writeDouble(arbitrageFinder.cycleWeight(cycle));
+            out.writeInt(cycle.length);
+            for (int v : cycle) {
+                out.writeInt(globalIds[v]);
+            }
+        }
+
+        //Boundary to boundary shortest path weights
+        double[] pathWeights = new double[size];
+        int[] stack = new int[size];
+        for (int a = 0; a < boundary.length; a++) {
+            sumPathWeights(boundary[a], pathWeights, stack);
+            for (int b = 0; b < boundary.length; b++) {
+                out.writeDouble(a == b ? 0 : pathWeights[boundary[b]]);
+            }
+        }
+    }
+
+    /**
+     * Sum the double precision weights along the shortest paths from one currency to each boundary currency
+     * Each path is walked back only until it meets one already summed, so a row costs O(shard size)
+     * A path whose walk loops (a local negative cycle) keeps the Floyd-Warshall distance
+     * @param from the local index of the first currency
+     * @param pathWeights filled in with the weight of the path to each currency walked (NaN for the others)
+     * @param stack working space, of the shard size
+     */
+    protected void sumPathWeights(int from, double[] pathWeights, int[] stack) {
+        Arrays.fill(pathWeights, Double.NaN);
+        pathWeights[from] = 0;
+        for (int to : boundary) {
+            int depth = 0;
+            int v = to;
+            while (v != AllPairsFloydWarshall.NO_VERTEX && Double.isNaN(pathWeights[v]) && depth < stack.length) {
+                stack[depth++] = v;
+                v = arbitrageFinder.previous(from, v);
+            }
+            if (v == AllPairsFloydWarshall.NO_VERTEX || Double.isNaN(pathWeights[v])) {
+                pathWeights[to] = arbitrageFinder.distance(from, to);
+                continue;
+            }
+            //Sum forwards from the currency already summed
+            for (int k = depth - 1; k >= 0; k--) {
+                pathWeights[stack[k]] = pathWeights[v] + arbitrageFinder.weight(v, stack[k]);
+                v = stack[k];
+            }
+        }
+    }
+
+    /**
+     * Send the shortest paths between pairs of boundary currencies
+     * Request: int count, (int from, int to) boundary positions per path
+     * Reply: per path, int length (0 if there is no simple path), int[length] global ids from from to to
+     */
+    protected void sendPaths(DataInputStream in, DataOutputStream out) throws IOException {
+        int count = in.readInt();
+        int[] reversed = new int[globalIds.length];
+        for (int p = 0; p < count; p++) {
+            int from = boundary[in.readInt()], to = boundary[in.readInt()];
+            //Walk back from to, until from is reached or a vertex would repeat
+            int length = 0;
+            int v = to;
+            while (v != AllPairsFloydWarshall.NO_VERTEX && v != from && length < globalIds.length) {
+                reversed[length++] = v;
+                v = arbitrageFinder.previous(from, v);
+            }
+            if (v != from || length == globalIds.length) {
+                out.writeInt(0);
+                continue;
+            }
+            reversed[length++] = from;
+            out.writeInt(length);
+            for (int k = length - 1; k >= 0; k--) {
+                out.writeInt(globalIds[reversed[k]]);
+            }
+        }
+    }
+
+    /**
+     * Run a worker process
+     * @param args the coordinator's host and port
+     * @throws IOException if the coordinator cannot be reached
+     */
+    public static void main(String[] args) throws IOException {
+        new ShardWorker(new Socket(args[0], Integer.parseInt(args[1]))).run();
+    }
+}
@@ -0,0 +1,434 @@
+package currencyexchangeproblem;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class scans for arbitrage across currencies partitioned into shards, each solved by a ShardWorker:
+ * - Workers are launched as processes with the same classpath (or as threads, for testing), and talk to this
+ *   coordinator over localhost sockets
+ * - Each worker runs Floyd-Warshall on its shard only, and reports its local cycles and the shortest path
+ *   weights between its boundary currencies (those with edges to or from other shards)
+ * - The table is read in one pass, which splits its edges into each shard's own edges and the cross-shard edges
+ * - The coordinator runs ArbitrageFinder on the small boundary graph: the cross-shard edges, plus one edge per
+ *   pair of boundary currencies in the same shard weighted by their shortest path within it.
+ *   Any cycle crossing shards is at least as heavy as one in the boundary graph, so all are found this way
+ * - Workers and the coordinator both solve in place in compact mode (float distances), so every diagonal below
+ *   SCREEN_SLACK is a candidate, and a candidate cycle is only kept if it is negative in double precision
+ * - Boundary graph cycles are stitched into global cycles by asking the workers for the paths they stand for,
+ *   and every cycle is re-checked against the original weights in double precision
+ * - A worker that does not connect or exit within WORKER_TIMEOUT_SECONDS, or does not reply (e.g. with its shard
+ *   solved) within REPLY_TIMEOUT_SECONDS, fails the scan with an IOException, and worker processes are destroyed
+ * @author Tamati Rudd 18045626
+ */
+public class ShardedArbitrageScan {
+    //Compact distances are float sums, so a diagonal this close to 0 may be a cycle that is negative in double
+    protected static final double SCREEN_SLACK = 1e-5;
+    protected static final int WORKER_TIMEOUT_SECONDS = 60;
+    //Longest wait for a worker's reply, which includes its shard solve
+    protected static final int REPLY_TIMEOUT_SECONDS = 600;
+    protected final WeightTable weights;
+    protected final int n;
+    protected final int[] shardOf;
+    protected final int shards;
+    protected final boolean inProcess;
+    protected ArrayList<int[]> cycles;
+    protected double[] cycleWeights;
+    protected int localCycles; //cycles found within one shard, which come first
+
+    /**
+     * Construct a new sharded arbitrage scan
+     * @param weights table of weights, read by the coordinator only
+     * @param shardOf the shard of each currency, from 0 to shards - 1
+     * @param shards the number of shards (and workers)
+     * @param inProcess whether to run the workers as threads of this process rather than as processes
+     */
+    public ShardedArbitrageScan(WeightTable weights, int[] shardOf, int shards, boolean inProcess) {
+        this.weights = weights;
+        n = weights.size();
+        this.shardOf = shardOf;
+        this.shards = shards;
+        this.inProcess = inProcess;
+    }
+
+    /**
+     * Partition currencies into shards of consecutive indexes
+     * @param n the number of currencies
+     * @param shards the number of shards
+     * @return the shard of each currency
+     */
+    public static int[] contiguousShards(int n, int shards) {
+        int[] shardOf = new int[n];
+        for (int i = 0; i < n; i++) {
+            shardOf[i] = (int) ((long) i * shards / n);
+        }
+        return shardOf;
+    }
+
+    /**
+     * Run the scan
+     * @return the number of arbitrage cycles found
+     * @throws IOException if a worker cannot be launched, fails or times out
+     */
+    public int scan() throws IOException {
+        //Currencies of each shard, and whether each currency is on the boundary
+        int[][] members = new int[shards][];
+        int[] sizes = new int[shards];
+        for (int i = 0; i < n; i++) {
+            sizes[shardOf[i]]++;
+        }
+        for (int s = 0; s < shards; s++) {
+            members[s] = new int[sizes[s]];
+        }
+        int[] localIndex = new int[n];
+        Arrays.fill(sizes, 0);
+        for (int i = 0; i < n; i++) {
+            localIndex[i] = sizes[shardOf[i]];
+            members[shardOf[i]][sizes[shardOf[i]]++] = i;
+        }
+        //One pass over the table: each shard's own edges, the cross-shard edges, and the boundary currencies
+        EdgeList[] shardEdges = new EdgeList[shards];
+        for (int s = 0; s < shards; s++) {
+            shardEdges[s] = new EdgeList();
+        }
+        EdgeList crossEdges = new EdgeList();
+        boolean[] onBoundary = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                double weight = weights.weight(i, j);
+                if (!(weight < AllPairsFloydWarshall.INFINITY)) {
+                    continue;
+                }
+                if (shardOf[i] == shardOf[j]) {
+                    shardEdges[shardOf[i]].add(localIndex[i], localIndex[j], weight);
+                } else {
+                    crossEdges.add(i, j, weight);
+                    onBoundary[i] = true;
+                    onBoundary[j] = true;
+                }
+            }
+        }
+
+        cycles = new ArrayList<>();
+        ArrayList<Double> foundWeights = new ArrayList<>();
+        HashSet<String> seen = new HashSet<>();
+        try (ServerSocket server = new ServerSocket(0, shards, InetAddress.getLoopbackAddress())) {
+            ArrayList<Process> processes = new ArrayList<>();
+            Socket[] sockets = new Socket[shards];
+            boolean finished = false;
+            try {
+                server.setSoTimeout(WORKER_TIMEOUT_SECONDS * 1000);
+                launchWorkers(server.getLocalPort(), processes);
+                DataInputStream[] ins = new DataInputStream[shards];
+                DataOutputStream[] outs = new DataOutputStream[shards];
+                for (int s = 0; s < shards; s++) {
+                    sockets[s] = server.accept();
+                    sockets[s].setSoTimeout(REPLY_TIMEOUT_SECONDS * 1000);
+                    ins[s] = new DataInputStream(new BufferedInputStream(sockets[s].getInputStream()));
+                    outs[s] = new DataOutputStream(new BufferedOutputStream(sockets[s].getOutputStream()));
+                }
+
+                //Send every shard before reading any reply, so the workers solve them at the same time
+                int[][] boundaries = new int[shards][];
+                for (int s = 0; s < shards; s++) {
+                    boundaries[s] = sendShard(outs[s], members[s], shardEdges[s], localIndex, onBoundary);
+                    shardEdges[s] = null;
+                }
+
+                //Collect local cycles and boundary distances, numbering the boundary currencies globally
+                int boundaryCount = 0;
+                int[] boundaryStart = new int[shards];
+                for (int s = 0; s < shards; s++) {
+                    boundaryStart[s] = boundaryCount;
+                    boundaryCount += boundaries[s].length;
+                }
+                int[] boundaryGlobal = new int[boundaryCount];
+                int[] boundaryShard = new int[boundaryCount];
+                int[] boundaryOf = new int[n]; //the boundary graph index of each boundary currency
+                double[][] boundaryWeights = new double[boundaryCount][boundaryCount];
+                for (double[] row : boundaryWeights) {
+                    Arrays.fill(row, AllPairsFloydWarshall.INFINITY);
+                }
+                for (int s = 0; s < shards; s++) {
+                    int count = ins[s].readInt();
+                    for (int c = 0; c < count; c++) {
+                        ins[s].readDouble(); //the worker's weight, re-checked below
+                        int[] cycle = new int[ins[s].readInt()];
+                        for (int k = 0; k < cycle.length; k++) {
+                            cycle[k] = ins[s].readInt();
+                        }
+                        addCycle(cycle, seen, foundWeights);
+                    }
+                    int[] boundary = boundaries[s];
+                    for (int a = 0; a < boundary.length; a++) {
+                        boundaryGlobal[boundaryStart[s] + a] = members[s][boundary[a]];
+                        boundaryShard[boundaryStart[s] + a] = s;
+                        boundaryOf[members[s][boundary[a]]] = boundaryStart[s] + a;
+                        for (int b = 0; b < boundary.length; b++) {
+                            double weight = ins[s].readDouble();
+                            if (a != b) {
+                                boundaryWeights[boundaryStart[s] + a][boundaryStart[s] + b] = weight;
+                            }
+                        }
+                    }
+                }
+                localCycles = cycles.size();
+                for (int e = 0; e < crossEdges.size; e++) {
+                    int a = boundaryOf[crossEdges.from[e]], b = boundaryOf[crossEdges.to[e]];
+                    boundaryWeights[a][b] = crossEdges.weight[e];
+                }
+
+                //Solve the boundary graph in place, then stitch its cycles into global cycles
+                ArbitrageFinder boundaryFinder = new ArbitrageFinder(boundaryWeights, true);
+                for (int[] cycle : screenCycles(boundaryFinder)) {
+                    int[] stitched = stitch(cycle, boundaryGlobal, boundaryShard, boundaryStart, ins, outs);
+                    if (stitched != null) {
+                        addCycle(stitched, seen, foundWeights);
+                    }
+                }
+
+                for (int s = 0; s < shards; s++) {
+                    outs[s].writeInt(ShardWorker.QUIT);
+                    outs[s].flush();
+                }
+                finished = true;
+            } finally {
+                for (Socket socket : sockets) {
+                    if (socket != null) {
+                        socket.close();
+                    }
+                }
+                stopWorkers(processes, finished);
+            }
+        }
+        cycleWeights = new double[foundWeights.size()];
+        for (int c = 0; c < cycleWeights.length; c++) {
+            cycleWeights[c] = foundWeights.get(c);
+        }
+        return cycles.size();
+    }
+
+    /**
+     * Launch one worker per shard, connecting back to the given port
+     */
+    protected void launchWorkers(int port, ArrayList<Process> processes) throws IOException {
+        String host = InetAddress.getLoopbackAddress().getHostAddress();
+        String java = ProcessHandle.current().info().command()
+                .orElse(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        for (int s = 0; s < shards; s++) {
+            if (inProcess) {
+                Thread worker = new Thread(new ShardWorker(new Socket(host, port)), "shard-worker-" + s);
+                worker.setDaemon(true);
+                worker.start();
+            } else {
+                ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                        ShardWorker.class.getName(), host, Integer.toString(port));
+                builder.inheritIO();
+                processes.add(builder.start());
+            }
+        }
+    }
+
+    /**
+     * Wait for the worker processes to exit, destroying any that are still running after WORKER_TIMEOUT_SECONDS
+     * @param finished whether the scan finished, so the workers were told to quit; if not they are destroyed at once
+     */
+    protected void stopWorkers(ArrayList<Process> processes, boolean finished) {
+        for (Process process : processes) {
+            try {
+                if (!finished || !process.waitFor(WORKER_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Send a shard to its worker
+     * @param edges the shard's own edges, by local index
+     * @return the local indexes of the shard's boundary currencies
+     */
+    private int[] sendShard(DataOutputStream out, int[] members, EdgeList edges, int[] localIndex,
+            boolean[] onBoundary) throws IOException {
+        out.writeInt(ShardWorker.SHARD);
+        out.writeInt(members.length);
+        for (int i : members) {
+            out.writeInt(i);
+        }
+        out.writeInt(edges.size);
+        for (int e = 0; e < edges.size; e++) {
+            out.writeInt(edges.from[e]);
+            out.writeInt(edges.to[e]);
+            out.writeDouble(edges.weight[e]);
+        }
+        int count = 0;
+        int[] boundary = new int[members.length];
+        for (int i : members) {
+            if (onBoundary[i]) {
+                boundary[count++] = localIndex[i];
+            }
+        }
+        out.writeInt(count);
+        for (int b = 0; b < count; b++) {
+            out.writeInt(boundary[b]);
+        }
+        out.flush();
+        return Arrays.copyOf(boundary, count);
+    }
+
+    /**
+     * Expand a boundary graph cycle into a global cycle, asking workers for the paths within their shards
+     * @return the global cycle, or null if a worker has no simple path for one of its edges
+     */
+    private int[] stitch(int[] cycle, int[] boundaryGlobal, int[] boundaryShard, int[] boundaryStart,
+            DataInputStream[] ins, DataOutputStream[] outs) throws IOException {
+        int[] stitched = new int[cycle.length];
+        int length = 0;
+        for (int k = 0; k < cycle.length; k++) {
+            int a = cycle[k], b = cycle[(k + 1) % cycle.length];
+            int s = boundaryShard[a];
+            if (boundaryShard[b] != s) { //a cross-shard edge
+                stitched = append(stitched, length, boundaryGlobal[a]);
+                length++;
+                continue;
+            }
+            outs[s].writeInt(ShardWorker.PATHS);
+            outs[s].writeInt(1);
+            outs[s].writeInt(a - boundaryStart[s]);
+            outs[s].writeInt(b - boundaryStart[s]);
+            outs[s].flush();
+            int pathLength = ins[s].readInt();
+            if (pathLength == 0) {
+                return null;
+            }
+            //The path's last currency is the next edge's first, so leave it out
+            for (int p = 0; p < pathLength; p++) {
+                int v = ins[s].readInt();
+                if (p < pathLength - 1) {
+                    stitched = append(stitched, length++, v);
+                }
+            }
+        }
+        return Arrays.copyOf(stitched, length);
+    }
+
+    private static int[] append(int[] values, int length, int value) {
+        if (length == values.length) {
+            values = Arrays.copyOf(values, 2 * length + 1);
+        }
+        values[length] = value;
+        return values;
+    }
+
+    /**
+     * Record a cycle if it is new and negative in double precision against the original weights
+     */
+    private void addCycle(int[] cycle, HashSet<String> seen, ArrayList<Double> foundWeights) {
+        double weight = 0;
+        for (int k = 0; k < cycle.length; k++) {
+            weight += weights.weight(cycle[k], cycle[(k + 1) % cycle.length]);
+        }
+        if (weight < 0 && seen.add(cycleKey(cycle))) {
+            cycles.add(cycle);
+            foundWeights.add(weight);
+        }
+    }
+
+    /**
+     * Find the negative cycles of a compact (or layered) Floyd-Warshall solve, allowing for float rounding
+     * Every diagonal below SCREEN_SLACK is a candidate, and its cycle is kept if negative in double precision
+     * @param finder the solved weights
+     * @return the cycles, each once, in path order
+     */
+    static ArrayList<int[]> screenCycles(ArbitrageFinder finder) {
+        ArrayList<int[]> found = new ArrayList<>();
+        HashSet<String> seen = new HashSet<>();
+        int size = finder.n;
+        for (int i = 0; i < size; i++) {
+            if (!(finder.distance(i, i) < SCREEN_SLACK)) {
+                continue;
+            }
+            int[] cycle = finder.arbitrageCycle(i);
+            if (cycle != null && finder.cycleWeight(cycle) < 0 && seen.add(cycleKey(cycle))) {
+                found.add(cycle);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * A key that is the same for every rotation of a cycle
+     * @param cycle the cycle's vertices in path order
+     * @return the cycle, written from its smallest vertex
+     */
+    static String cycleKey(int[] cycle) {
+        int start = 0;
+        for (int k = 1; k < cycle.length; k++) {
+            if (cycle[k] < cycle[start]) {
+                start = k;
+            }
+        }
+        StringBuilder key = new StringBuilder();
+        for (int k = 0; k < cycle.length; k++) {
+            key.append(cycle[(start + k) % cycle.length]).append(',');
+        }
+        return key.toString();
+    }
+
+    /**
+     * @param k which cycle, from 0 to scan() - 1 (cycles within one shard come first)
+     * @return the cycle's global currency indexes in path order
+     */
+    public int[] cycle(int k) {
+        return cycles.get(k).clone();
+    }
+
+    /**
+     * @param k which cycle, from 0 to scan() - 1
+     * @return the (negative) weight of the cycle
+     */
+    public double cycleWeight(int k) {
+        return cycleWeights[k];
+    }
+
+    /**
+     * @return the number of cycles found within one shard
+     */
+    public int localCycles() {
+        return localCycles;
+    }
+
+    /**
+     * A growable list of weighted edges
+     */
+    private static class EdgeList {
+        private int[] from = new int[16], to = new int[16];
+        private double[] weight = new double[16];
+        private int size;
+
+        private void add(int i, int j, double w) {
+            if (size == from.length) {
+                from = Arrays.copyOf(from, 2 * size);
+                to = Arrays.copyOf(to, 2 * size);
+                weight = Arrays.copyOf(weight, 2 * size);
+            }
+            from[size] = i;
+            to[size] = j;
+            weight[size++] = w;
+        }
+    }
+}
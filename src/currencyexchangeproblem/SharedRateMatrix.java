@@ -0,0 +1,211 @@
+package currencyexchangeproblem;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class stores an n x n table of graph edge weights off-heap, in a memory-mapped file shared between processes:
+ * - One writer process updates weights inside write sections
+ * - Any number of reader processes (e.g. running ArbitrageFinder or Bellman-Ford) read the weights in place
+ *   (relaxTable) or copy them (the WeightTable constructors), under beginRead/validate
+ * - A seqlock version word lets readers detect that a write overlapped their read, and retry
+ * File layout: a 64 byte header (magic, n, version), followed by the n x n weights in row order
+ * @author Tamati Rudd 18045626
+ */
+public class SharedRateMatrix implements WeightTable {
+    protected static final long MAGIC = 0x4655524152415445L;
+    protected static final int MAGIC_OFFSET = 0, SIZE_OFFSET = 8, VERSION_OFFSET = 16, HEADER_BYTES = 64;
+    protected static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    protected MappedByteBuffer buffer;
+    protected int n;
+    protected boolean writable;
+    protected long writeVersion; //version while the writer is inside a write section
+    
+    /**
+     * Construct a shared rate matrix over a mapped buffer
+     * @param buffer the mapped file
+     * @param n the number of currencies
+     * @param writable whether this process is the writer
+     */
+    protected SharedRateMatrix(MappedByteBuffer buffer, int n, boolean writable) {
+        this.buffer = buffer;
+        this.n = n;
+        this.writable = writable;
+        this.buffer.order(ByteOrder.nativeOrder());
+    }
+    
+    /**
+     * Create (or replace) the shared file, as the single writer, with no exchanges
+     * @param file the file to share, ideally on a memory-backed file system such as /dev/shm
+     * @param n the number of currencies
+     * @return the shared rate matrix
+     * @throws IOException if the file cannot be created or mapped
+     */
+    public static SharedRateMatrix create(Path file, int n) throws IOException {
+        long bytes = HEADER_BYTES + 8L * n * n;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too many currencies to map: " + n);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            SharedRateMatrix matrix = new SharedRateMatrix(buffer, n, true);
+            buffer.putLong(SIZE_OFFSET, n);
+            for (long cell = 0; cell < (long) n * n; cell++) {
+                buffer.putDouble(HEADER_BYTES + (int) (8 * cell), Double.POSITIVE_INFINITY);
+            }
+            LONGS.setRelease(buffer, VERSION_OFFSET, 0L);
+            LONGS.setRelease(buffer, MAGIC_OFFSET, MAGIC); //Written last, so readers only open a complete file
+            return matrix;
+        }
+    }
+    
+    /**
+     * Open an existing shared file as a reader
+     * @param file the shared file
+     * @return the shared rate matrix
+     * @throws IOException if the file cannot be mapped, or was not created by a writer
+     */
+    public static SharedRateMatrix open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.nativeOrder());
+            if (channel.size() < HEADER_BYTES || (long) LONGS.getAcquire(buffer, MAGIC_OFFSET) != MAGIC) {
+                throw new IOException("not a shared rate matrix: " + file);
+            }
+            long size = buffer.getLong(SIZE_OFFSET);
+            if (size < 0 || HEADER_BYTES + 8 * size * size > Integer.MAX_VALUE) {
+                throw new IOException("shared rate matrix has an invalid size " + size + ": " + file);
+            }
+            int n = (int) size;
+            if (channel.size() < HEADER_BYTES + 8L * n * n) {
+                throw new IOException("shared rate matrix is truncated: " + file);
+            }
+            return new SharedRateMatrix(buffer, n, false);
+        }
+    }
+    
+    /**
+     * Begin a write section, making the version odd so readers know the weights are changing
+     */
+    public void beginWrite() {
+        if (!writable) {
+            throw new IllegalStateException("shared rate matrix is read-only in this process");
+        }
+        writeVersion = (long) LONGS.getOpaque(buffer, VERSION_OFFSET) + 1;
+        LONGS.setOpaque(buffer, VERSION_OFFSET, writeVersion);
+        VarHandle.storeStoreFence(); //The odd version must be visible before any weight changes
+    }
+    
+    /**
+     * End a write section, publishing the weights written with an even version
+     */
+    public void endWrite() {
+        LONGS.setRelease(buffer, VERSION_OFFSET, writeVersion + 1);
+    }
+    
+    /**
+     * Set a weight; must be inside a write section
+     * @param i table row (from currency)
+     * @param j table column (to currency)
+     * @param weight the weight of the edge from currency i to currency j
+     */
+    public void setWeight(int i, int j, double weight) {
+        buffer.putDouble(offsetOf(i, j), weight);
+    }
+    
+    /**
+     * Set the weight for an exchange rate; must be inside a write section
+     * @param i table row (from currency)
+     * @param j table column (to currency)
+     * @param rate the exchange rate (0 for no exchange)
+     */
+    public void setRate(int i, int j, double rate) {
+        setWeight(i, j, RateMatrix.weightFor(i, j, rate));
+    }
+    
+    /**
+     * Publish the changed cells of a rate matrix in one write section, then clear its dirty set
+     * @param rates the rate matrix, of the same size
+     * @return the number of cells published
+     */
+    public int publishDirty(RateMatrix rates) {
+        int count = rates.dirtyCount();
+        beginWrite();
+        for (int k = 0; k < count; k++) {
+            int cell = rates.dirtyCell(k);
+            int i = rates.rowOf(cell);
+            int j = rates.columnOf(cell);
+            setWeight(i, j, rates.weight(i, j));
+        }
+        endWrite();
+        rates.clearDirty();
+        return count;
+    }
+    
+    /**
+     * Begin an optimistic read, waiting for any write section in progress to finish
+     * @return the version to pass to validate once the read is done
+     */
+    @Override
+    public long beginRead() {
+        long version = (long) LONGS.getAcquire(buffer, VERSION_OFFSET);
+        while ((version & 1) != 0) {
+            Thread.onSpinWait();
+            version = (long) LONGS.getAcquire(buffer, VERSION_OFFSET);
+        }
+        return version;
+    }
+    
+    /**
+     * Check that no write happened since beginRead, so everything read in between was a consistent view
+     * @param version the version returned by beginRead
+     * @return true if the read was consistent, false if it must be retried
+     */
+    @Override
+    public boolean validate(long version) {
+        VarHandle.loadLoadFence(); //The weights read must not be reordered after this version check
+        return (long) LONGS.getAcquire(buffer, VERSION_OFFSET) == version;
+    }
+    
+    /**
+     * @return the number of completed write sections, times two
+     */
+    public long version() {
+        return (long) LONGS.getAcquire(buffer, VERSION_OFFSET);
+    }
+    
+    /**
+     * @return the number of currencies
+     */
+    @Override
+    public int size() {
+        return n;
+    }
+    
+    /**
+     * Read a weight in place; wrap reads in beginRead/validate for a consistent view
+     * @param i table row (from currency)
+     * @param j table column (to currency)
+     * @return the weight of the edge from currency i to currency j
+     */
+    @Override
+    public double weight(int i, int j) {
+        return buffer.getDouble(offsetOf(i, j));
+    }
+    
+    /**
+     * @param i table row
+     * @param j table column
+     * @return the byte offset of the cell in the file
+     */
+    protected int offsetOf(int i, int j) {
+        return HEADER_BYTES + 8 * (i * n + j);
+    }
+}
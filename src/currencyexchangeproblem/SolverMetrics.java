@@ -0,0 +1,254 @@
+package currencyexchangeproblem;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * This class records hot-path metrics for one solver (e.g. Bellman-Ford), and exposes them as an MBean:
+ * - Counters (runs, passes until convergence, relaxations, edge scans, vertexes visited, results found,
+ *   estimated bytes allocated) are striped LongAdders, so recording is lock-free
+ * - Wall time for each phase of the solver is recorded in a LatencyHistogram
+ * Solvers count into local variables on their hot loops and record once per run, and only when ENABLED is true
+ * Metrics are on by default, and turned off with -Dcurrencyexchange.metrics.disabled=true
+ * @author Tamati Rudd 18045626
+ */
+public class SolverMetrics implements SolverMetricsMBean {
+    public static final boolean ENABLED = !Boolean.getBoolean("currencyexchange.metrics.disabled");
+    public static final SolverMetrics BELLMAN_FORD = register("BellmanFord", "setup", "relax", "result");
+    public static final SolverMetrics FLOYD_WARSHALL = register("FloydWarshall", "build", "detect");
+    public static final SolverMetrics DEPTH_FIRST_SEARCH = register("DepthFirstSearch", "search", "bridges");
+    
+    protected String solverName;
+    protected String[] phaseNames;
+    protected LatencyHistogram[] phases;
+    protected LongAdder runs;
+    protected LongAdder passes;
+    protected LongAdder relaxations;
+    protected LongAdder edgeScans;
+    protected LongAdder verticesVisited;
+    protected LongAdder resultsFound;
+    protected LongAdder allocatedBytes;
+    protected volatile long lastProblemSize;
+    
+    /**
+     * Construct new, empty solver metrics
+     * @param solverName the name of the solver
+     * @param phaseNames the names of the solver's phases, indexed by phase number
+     */
+    public SolverMetrics(String solverName, String... phaseNames) {
+        this.solverName = solverName;
+        this.phaseNames = phaseNames;
+        this.phases = new LatencyHistogram[phaseNames.length];
+        for (int phase = 0; phase < phases.length; phase++) {
+            phases[phase] = new LatencyHistogram();
+        }
+        runs = new LongAdder();
+        passes = new LongAdder();
+        relaxations = new LongAdder();
+        edgeScans = new LongAdder();
+        verticesVisited = new LongAdder();
+        resultsFound = new LongAdder();
+        allocatedBytes = new LongAdder();
+        lastProblemSize = 0;
+    }
+    
+    /**
+     * Create solver metrics and register them with the platform MBean server (if metrics are enabled)
+     * Registration failures are ignored, as metrics are still recorded and readable without JMX
+     * @param solverName the name of the solver
+     * @param phaseNames the names of the solver's phases, indexed by phase number
+     * @return the solver metrics
+     */
+    public static SolverMetrics register(String solverName, String... phaseNames) {
+        SolverMetrics metrics = new SolverMetrics(solverName, phaseNames);
+        if (ENABLED) {
+            try {
+                ObjectName name = new ObjectName("currencyexchangeproblem:type=SolverMetrics,name=" + solverName);
+                if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                    ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+                }
+            } catch (JMException | SecurityException e) {
+                //Metrics are still recorded, just not visible over JMX
+            }
+        }
+        return metrics;
+    }
+    
+    /**
+     * Record one run of the solver
+     * @param problemSize the number of vertexes (or matrix size) the solver ran on
+     * @param allocated estimated bytes allocated by the run
+     */
+    public void recordRun(long problemSize, long allocated) {
+        runs.increment();
+        lastProblemSize = problemSize;
+        allocatedBytes.add(allocated);
+    }
+    
+    /**
+     * Record the wall time of a phase
+     * @param phase the phase number
+     * @param nanos the wall time in nanoseconds
+     */
+    public void recordPhase(int phase, long nanos) {
+        phases[phase].record(nanos);
+    }
+    
+    public void addPasses(long count) {
+        passes.add(count);
+    }
+    
+    public void addRelaxations(long count) {
+        relaxations.add(count);
+    }
+    
+    public void addEdgeScans(long count) {
+        edgeScans.add(count);
+    }
+    
+    public void addVerticesVisited(long count) {
+        verticesVisited.add(count);
+    }
+    
+    public void addResultsFound(long count) {
+        resultsFound.add(count);
+    }
+    
+    /**
+     * @param phase the phase number
+     * @return the latency histogram of the phase
+     */
+    public LatencyHistogram phase(int phase) {
+        return phases[phase];
+    }
+    
+    @Override
+    public boolean isEnabled() {
+        return ENABLED;
+    }
+    
+    @Override
+    public String getSolverName() {
+        return solverName;
+    }
+    
+    @Override
+    public long getRuns() {
+        return runs.sum();
+    }
+    
+    @Override
+    public long getPasses() {
+        return passes.sum();
+    }
+    
+    @Override
+    public long getRelaxations() {
+        return relaxations.sum();
+    }
+    
+    @Override
+    public long getEdgeScans() {
+        return edgeScans.sum();
+    }
+    
+    @Override
+    public long getVerticesVisited() {
+        return verticesVisited.sum();
+    }
+    
+    @Override
+    public long getResultsFound() {
+        return resultsFound.sum();
+    }
+    
+    @Override
+    public long getAllocatedBytes() {
+        return allocatedBytes.sum();
+    }
+    
+    @Override
+    public long getLastProblemSize() {
+        return lastProblemSize;
+    }
+    
+    @Override
+    public String[] getPhaseNames() {
+        return phaseNames.clone();
+    }
+    
+    @Override
+    public long[] getPhaseCounts() {
+        long[] values = new long[phases.length];
+        for (int phase = 0; phase < phases.length; phase++) {
+            values[phase] = phases[phase].count();
+        }
+        return values;
+    }
+    
+    @Override
+    public long[] getPhaseMeanNanos() {
+        long[] values = new long[phases.length];
+        for (int phase = 0; phase < phases.length; phase++) {
+            values[phase] = phases[phase].mean();
+        }
+        return values;
+    }
+    
+    @Override
+    public long[] getPhaseP50Nanos() {
+        long[] values = new long[phases.length];
+        for (int phase = 0; phase < phases.length; phase++) {
+            values[phase] = phases[phase].percentile(50);
+        }
+        return values;
+    }
+    
+    @Override
+    public long[] getPhaseP99Nanos() {
+        long[] values = new long[phases.length];
+        for (int phase = 0; phase < phases.length; phase++) {
+            values[phase] = phases[phase].percentile(99);
+        }
+        return values;
+    }
+    
+    @Override
+    public long[] getPhaseMaxNanos() {
+        long[] values = new long[phases.length];
+        for (int phase = 0; phase < phases.length; phase++) {
+            values[phase] = phases[phase].max();
+        }
+        return values;
+    }
+    
+    @Override
+    public void reset() {
+        for (LatencyHistogram phase : phases) {
+            phase.reset();
+        }
+        runs.reset();
+        passes.reset();
+        relaxations.reset();
+        edgeScans.reset();
+        verticesVisited.reset();
+        resultsFound.reset();
+        allocatedBytes.reset();
+        lastProblemSize = 0;
+    }
+    
+    /**
+     * @return a one line summary of the metrics
+     */
+    public String toString() {
+        String output = solverName + ": runs=" + getRuns() + " passes=" + getPasses() + " relaxations=" + getRelaxations()
+                + " edgeScans=" + getEdgeScans() + " verticesVisited=" + getVerticesVisited() + " resultsFound=" + getResultsFound()
+                + " allocatedBytes=" + getAllocatedBytes() + " lastProblemSize=" + getLastProblemSize();
+        for (int phase = 0; phase < phases.length; phase++) {
+            output += " " + phaseNames[phase] + "(mean=" + phases[phase].mean() + "ns p99=" + phases[phase].percentile(99) + "ns)";
+        }
+        return output;
+    }
+}
@@ -0,0 +1,42 @@
+package currencyexchangeproblem;
+
+/**
+ * This interface defines the attributes and operations of SolverMetrics exposed over JMX
+ * @author Tamati Rudd 18045626
+ */
+public interface SolverMetricsMBean {
+    
+    public boolean isEnabled();
+    
+    public String getSolverName();
+    
+    public long getRuns();
+    
+    public long getPasses();
+    
+    public long getRelaxations();
+    
+    public long getEdgeScans();
+    
+    public long getVerticesVisited();
+    
+    public long getResultsFound();
+    
+    public long getAllocatedBytes();
+    
+    public long getLastProblemSize();
+    
+    public String[] getPhaseNames();
+    
+    public long[] getPhaseCounts();
+    
+    public long[] getPhaseMeanNanos();
+    
+    public long[] getPhaseP50Nanos();
+    
+    public long[] getPhaseP99Nanos();
+    
+    public long[] getPhaseMaxNanos();
+    
+    public void reset();
+}
@@ -0,0 +1,196 @@
+package currencyexchangeproblem;
+
+import java.util.Random;
+
+/**
+ * This class generates a deterministic (seeded) synthetic currency market for load testing:
+ * - Each currency has a log price, and each quoted pair's rate is the ratio of prices less a spread,
+ *   so a freshly quoted market has no arbitrage
+ * - Quoted pairs form a connected sparse graph: a random spanning tree plus random extra pairs up to a density
+ * - Ticks move one currency's price by a random walk step and requote one of its pairs
+ * - A configurable fraction of ticks inject arbitrage, by quoting a rate above the fair price by more than the spread
+ * The same seed and settings always give the same market and tick stream
+ * @author Tamati Rudd 18045626
+ */
+public class SyntheticMarket {
+    protected int n;
+    protected double spread; //fraction taken off the fair rate of every quote
+    protected double volatility; //standard deviation of a tick's log price step
+    protected double arbitrageProbability; //fraction of ticks that inject arbitrage
+    protected double arbitrageSize; //fraction above the fair rate of an injected quote
+    protected Random random;
+    protected double[] logPrices;
+    protected int[] pairFrom, pairTo; //quoted pairs, each quoted in both directions
+    protected int[][] pairsOf; //indexes of the pairs involving each currency
+    protected long time;
+    
+    /**
+     * Construct a new synthetic market
+     * @param seed the random seed
+     * @param n the number of currencies
+     * @param density the fraction of all currency pairs that are quoted (at least a spanning tree is)
+     * @param volatility standard deviation of a tick's log price step, e.g. 0.0001
+     * @param spread fraction taken off the fair rate of every quote, e.g. 0.001
+     * @param arbitrageProbability fraction of ticks that inject arbitrage, e.g. 0.01
+     */
+    public SyntheticMarket(long seed, int n, double density, double volatility, double spread, double arbitrageProbability) {
+        if (n < 2) {
+            throw new IllegalArgumentException("a market needs at least two currencies");
+        }
+        this.n = n;
+        this.spread = spread;
+        this.volatility = volatility;
+        this.arbitrageProbability = arbitrageProbability;
+        this.arbitrageSize = 2 * spread + 0.001;
+        this.random = new Random(seed);
+        this.time = 0;
+        
+        //Log prices spread over several orders of magnitude, like real currencies
+        logPrices = new double[n];
+        for (int i = 0; i < n; i++) {
+            logPrices[i] = random.nextGaussian() * 2;
+        }
+        
+        //A random spanning tree keeps the market connected, then random extra pairs are added up to the density
+        long allPairs = (long) n * (n - 1) / 2;
+        int pairCount = (int) Math.max(n - 1, Math.min(allPairs, Math.round(allPairs * density)));
+        pairFrom = new int[pairCount];
+        pairTo = new int[pairCount];
+        boolean[][] quoted = new boolean[n][n];
+        int[] degree = new int[n];
+        int p = 0;
+        for (int i = 1; i < n; i++) {
+            int j = random.nextInt(i);
+            quoted[i][j] = quoted[j][i] = true;
+            pairFrom[p] = i;
+            pairTo[p++] = j;
+            degree[i]++;
+            degree[j]++;
+        }
+        while (p < pairCount) {
+            int i = random.nextInt(n);
+            int j = random.nextInt(n);
+            if (i != j && !quoted[i][j]) {
+                quoted[i][j] = quoted[j][i] = true;
+                pairFrom[p] = i;
+                pairTo[p++] = j;
+                degree[i]++;
+                degree[j]++;
+            }
+        }
+        pairsOf = new int[n][];
+        for (int i = 0; i < n; i++) {
+            pairsOf[i] = new int[degree[i]];
+            degree[i] = 0;
+        }
+        for (p = 0; p < pairCount; p++) {
+            pairsOf[pairFrom[p]][degree[pairFrom[p]]++] = p;
+            pairsOf[pairTo[p]][degree[pairTo[p]]++] = p;
+        }
+    }
+    
+    /**
+     * @param from the from currency
+     * @param to the to currency
+     * @return the fair exchange rate less the spread
+     */
+    public double quotedRate(int from, int to) {
+        return Math.exp(logPrices[from] - logPrices[to]) * (1 - spread);
+    }
+    
+    /**
+     * Build a rate matrix with every pair freshly quoted in both directions
+     * @return the rate matrix
+     */
+    public RateMatrix newRateMatrix() {
+        RateMatrix rates = new RateMatrix(n);
+        for (int p = 0; p < pairFrom.length; p++) {
+            rates.setRate(pairFrom[p], pairTo[p], quotedRate(pairFrom[p], pairTo[p]));
+            rates.setRate(pairTo[p], pairFrom[p], quotedRate(pairTo[p], pairFrom[p]));
+        }
+        rates.clearDirty();
+        return rates;
+    }
+    
+    /**
+     * Generate the next tick, filling in a reusable tick so that the stream allocates nothing
+     * @param tick the tick to fill in
+     */
+    public void nextTick(Tick tick) {
+        //Move one currency's price, then requote one of its pairs in a random direction
+        int currency = random.nextInt(n);
+        logPrices[currency] += random.nextGaussian() * volatility;
+        int[] pairs = pairsOf[currency];
+        int p = pairs[random.nextInt(pairs.length)];
+        boolean forward = random.nextBoolean();
+        tick.from = forward ? pairFrom[p] : pairTo[p];
+        tick.to = forward ? pairTo[p] : pairFrom[p];
+        tick.time = ++time;
+        tick.arbitrage = random.nextDouble() < arbitrageProbability;
+        if (tick.arbitrage) { //Above the fair rate by more than the spread, so this pair and its reverse are an arbitrage
+            tick.rate = Math.exp(logPrices[tick.from] - logPrices[tick.to]) * (1 + arbitrageSize);
+        } else {
+            tick.rate = quotedRate(tick.from, tick.to);
+        }
+    }
+    
+    /**
+     * @return the number of currencies
+     */
+    public int size() {
+        return n;
+    }
+    
+    /**
+     * @return the number of quoted pairs (each quoted in both directions)
+     */
+    public int pairCount() {
+        return pairFrom.length;
+    }
+    
+    /**
+     * @param p a pair index
+     * @return one currency of the pair
+     */
+    public int pairFrom(int p) {
+        return pairFrom[p];
+    }
+    
+    /**
+     * @param p a pair index
+     * @return the other currency of the pair
+     */
+    public int pairTo(int p) {
+        return pairTo[p];
+    }
+    
+    /**
+     * One rate update in the tick stream
+     */
+    public static class Tick {
+        protected int from, to;
+        protected double rate;
+        protected long time; //tick sequence number
+        protected boolean arbitrage; //whether this tick injected arbitrage
+        
+        public int getFrom() {
+            return from;
+        }
+        
+        public int getTo() {
+            return to;
+        }
+        
+        public double getRate() {
+            return rate;
+        }
+        
+        public long getTime() {
+            return time;
+        }
+        
+        public boolean isArbitrage() {
+            return arbitrage;
+        }
+    }
+}
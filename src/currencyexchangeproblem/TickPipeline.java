@@ -0,0 +1,338 @@
+package currencyexchangeproblem;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * This class ingests exchange rate ticks through a ring buffer of preallocated slots, and applies them to a
+ * RateMatrix in batches:
+ * - Producers (feed handlers) claim a slot by sequence number (with a CAS when there are several producers),
+ *   write the raw tick into it, then publish the slot
+ * - Two pipelined stage threads take the ticks in batches, each tracking its own sequence like the producers':
+ *   the convert stage decodes (unpacks and validates) published ticks and converts their rates to weights, while
+ *   the apply stage writes earlier converted batches to the RateMatrix, so the stages overlap
+ * - Batch listeners (e.g. IncrementalConversionCheck) then run on the apply stage once per batch over the dirty set,
+ *   not once per tick; the convert stage carries on meanwhile
+ * - A slot is only reused once applied, and without start() processBatch runs both stages in turn
+ * - The batch size adapts to load: it doubles while a backlog builds up, so checks are amortised over more
+ *   ticks, and halves when the backlog clears, to keep latency low
+ * Raw tick format (TICK_BYTES, big-endian): int from, int to, double rate, long time
+ * @author Tamati Rudd 18045626
+ */
+public class TickPipeline implements AutoCloseable {
+    public static final int TICK_BYTES = 24;
+    protected static final int MIN_BATCH = 16;
+    protected final RateMatrix rates;
+    protected final int n;
+    protected final boolean singleProducer;
+    protected final int capacity;
+    protected final int mask;
+    //Preallocated slots: three raw words per tick, then the decoded and converted tick
+    protected final long[] words;
+    protected final int[] from, to;
+    protected final double[] rate, weight;
+    protected final AtomicLongArray published; //sequence last published in each slot
+    protected final AtomicLong claimed; //next sequence to claim
+    protected volatile long converted; //next sequence to convert; slots before it are decoded and converted
+    protected volatile long consumed; //next sequence to apply; slots before it are free
+    protected final CopyOnWriteArrayList<BatchListener> listeners;
+    protected int batchSize; //only used by the apply stage
+    protected final int maxBatch;
+    //Counters, each written only by one stage
+    protected volatile long ticksApplied, ticksRejected, batches;
+    private volatile boolean running;
+    private volatile boolean staged; //whether the stages run on their own threads
+    private Thread converter, consumer;
+
+    /**
+     * Interface for checks to run once for each batch of ticks applied
+     */
+    public interface BatchListener {
+        /**
+         * Called by the apply stage after a batch is applied, before the dirty set is cleared
+         * @param rates the rate matrix, whose dirty set holds the cells the batch changed
+         * @param ticks the number of ticks in the batch
+         */
+        public void batchApplied(RateMatrix rates, int ticks);
+    }
+
+    /**
+     * Construct a new tick pipeline
+     * @param rates the rate matrix to apply ticks to, only written by the apply stage
+     * @param capacity the number of slots (rounded up to a power of 2)
+     * @param singleProducer whether only one thread publishes ticks, so slots can be claimed without a CAS
+     */
+    public TickPipeline(RateMatrix rates, int capacity, boolean singleProducer) {
+        this.rates = rates;
+        n = rates.size();
+        this.singleProducer = singleProducer;
+        this.capacity = Integer.highestOneBit(Math.max(MIN_BATCH, capacity) - 1) << 1;
+        mask = this.capacity - 1;
+        words = new long[3 * this.capacity];
+        from = new int[this.capacity];
+        to = new int[this.capacity];
+        rate = new double[this.capacity];
+        weight = new double[this.capacity];
+        published = new AtomicLongArray(this.capacity);
+        for (int s = 0; s < this.capacity; s++) {
+            published.set(s, -1);
+        }
+        claimed = new AtomicLong();
+        converted = 0;
+        consumed = 0;
+        listeners = new CopyOnWriteArrayList<>();
+        batchSize = MIN_BATCH;
+        maxBatch = Math.max(MIN_BATCH, this.capacity / 2);
+    }
+
+    /**
+     * @param listener a check to run once for each batch
+     */
+    public void addBatchListener(BatchListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Publish a tick, waiting for a free slot if the ring is full
+     * @param from from currency index
+     * @param to to currency index
+     * @param rate the exchange rate (0 to remove the exchange)
+     * @param time the tick time
+     */
+    public void publish(int from, int to, double rate, long time) {
+        long sequence = claim();
+        int base = 3 * (int) (sequence & mask);
+        words[base] = ((long) from << 32) | (to & 0xffffffffL);
+        words[base + 1] = Double.doubleToRawLongBits(rate);
+        words[base + 2] = time;
+        published.lazySet((int) (sequence & mask), sequence);
+    }
+
+    /**
+     * Publish a raw tick read from a feed, waiting for a free slot if the ring is full
+     * @param message the tick, TICK_BYTES from its position (which is advanced past it)
+     */
+    public void publish(ByteBuffer message) {
+        long sequence = claim();
+        int base = 3 * (int) (sequence & mask);
+        words[base] = ((long) message.getInt() << 32) | (message.getInt() & 0xffffffffL);
+        words[base + 1] = message.getLong();
+        words[base + 2] = message.getLong();
+        published.lazySet((int) (sequence & mask), sequence);
+    }
+
+    /**
+     * Claim the next sequence, waiting while its slot has not been consumed
+     * @return the sequence
+     */
+    private long claim() {
+        while (true) {
+            long sequence = claimed.get();
+            if (sequence - consumed >= capacity) {
+                Thread.onSpinWait();
+                if (sequence - consumed >= capacity) {
+                    LockSupport.parkNanos(1000);
+                }
+            } else if (singleProducer) {
+                claimed.lazySet(sequence + 1);
+                return sequence;
+            } else if (claimed.compareAndSet(sequence, sequence + 1)) {
+                return sequence;
+            }
+        }
+    }
+
+    /**
+     * Convert stage: decode and convert one batch of published ticks, up to the largest batch size
+     * Must only be called by one thread at a time (the convert stage)
+     * @return the number of ticks converted
+     */
+    protected int convertBatch() {
+        long start = converted;
+        //Take the published ticks whose slots have not been converted
+        int count = 0;
+        while (count < maxBatch && published.get((int) ((start + count) & mask)) == start + count) {
+            count++;
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        //Decode: unpack each tick, rejecting unknown currencies and invalid rates
+        int rejected = 0;
+        for (int k = 0; k < count; k++) {
+            int slot = (int) ((start + k) & mask);
+            long pair = words[3 * slot];
+            int i = (int) (pair >>> 32), j = (int) pair;
+            double r = Double.longBitsToDouble(words[3 * slot + 1]);
+            if (i < 0 || i >= n || j < 0 || j >= n || !(r >= 0) || Double.isInfinite(r)) {
+                from[slot] = -1;
+                rejected++;
+                continue;
+            }
+            from[slot] = i;
+            to[slot] = j;
+            rate[slot] = r;
+        }
+
+        //Convert: rates to weights
+        for (int k = 0; k < count; k++) {
+            int slot = (int) ((start + k) & mask);
+            if (from[slot] >= 0) {
+                weight[slot] = RateMatrix.weightFor(from[slot], to[slot], rate[slot]);
+            }
+        }
+
+        ticksRejected += rejected;
+        converted = start + count; //Hands the converted slots to the apply stage
+        return count;
+    }
+
+    /**
+     * Apply stage: apply one batch of converted ticks, then run the batch listeners
+     * Without start(), first runs the convert stage, so a single caller can drive the whole pipeline
+     * Must only be called by one thread at a time (the apply stage)
+     * @return the number of ticks consumed
+     */
+    public int processBatch() {
+        if (!staged) {
+            convertBatch();
+        }
+        long start = consumed;
+        int count = (int) Math.min(batchSize, converted - start);
+        if (count == 0) {
+            return 0;
+        }
+
+        //Apply: in sequence order, so the last tick for a pair wins
+        int accepted = 0;
+        for (int k = 0; k < count; k++) {
+            int slot = (int) ((start + k) & mask);
+            if (from[slot] >= 0) {
+                rates.setRate(from[slot], to[slot], rate[slot], weight[slot]);
+                accepted++;
+            }
+        }
+
+        //Free the slots before the checks, so producers are not held up by them
+        long backlog = claimed.get() - (start + count);
+        consumed = start + count;
+        ticksApplied += accepted;
+        batches++;
+
+        if (rates.dirtyCount() > 0) {
+            for (BatchListener listener : listeners) {
+                listener.batchApplied(rates, count);
+            }
+            rates.clearDirty();
+        }
+
+        //Adapt the batch size to the backlog
+        if (backlog > batchSize) {
+            batchSize = Math.min(2 * batchSize, maxBatch);
+        } else if (backlog < batchSize / 4) {
+            batchSize = Math.max(batchSize / 2, MIN_BATCH);
+        }
+        return count;
+    }
+
+    /**
+     * Start the convert and apply stage threads, which process batches until closed
+     */
+    public synchronized void start() {
+        if (consumer != null) {
+            throw new IllegalStateException("already started");
+        }
+        running = true;
+        staged = true;
+        converter = stageThread("tick-pipeline-convert", this::convertBatch, () -> converted);
+        consumer = stageThread("tick-pipeline-apply", this::processBatch, () -> consumed);
+        converter.start();
+        consumer.start();
+    }
+
+    /**
+     * @param name the thread name
+     * @param stage runs one batch of the stage, returning the number of ticks it took
+     * @param position the stage's next sequence
+     * @return a daemon thread that runs the stage until closed and every claimed tick has passed it
+     */
+    private Thread stageThread(String name, IntSupplier stage, LongSupplier position) {
+        Thread thread = new Thread(() -> {
+            int idle = 0;
+            while (running || position.getAsLong() != claimed.get()) {
+                if (stage.getAsInt() > 0) {
+                    idle = 0;
+                } else if (++idle < 100) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(10_000);
+                }
+            }
+        }, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Stop the stage threads, once every tick already claimed has been applied
+     * Producers must have stopped publishing
+     * If interrupted while waiting, returns with the interrupt flag set, leaving the (daemon) stage threads to finish
+     */
+    @Override
+    public synchronized void close() {
+        running = false;
+        try {
+            if (converter != null) {
+                converter.join();
+                converter = null;
+            }
+            if (consumer != null) {
+                consumer.join();
+                consumer = null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of ticks applied
+     */
+    public long ticksApplied() {
+        return ticksApplied;
+    }
+
+    /**
+     * @return the number of ticks rejected when decoded
+     */
+    public long ticksRejected() {
+        return ticksRejected;
+    }
+
+    /**
+     * @return the number of batches processed
+     */
+    public long batches() {
+        return batches;
+    }
+
+    /**
+     * @return the current batch size
+     */
+    public int batchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return the number of slots
+     */
+    public int capacity() {
+        return capacity;
+    }
+}
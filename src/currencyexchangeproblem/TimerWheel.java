@@ -0,0 +1,241 @@
+package currencyexchangeproblem;
+
+import java.util.Arrays;
+
+/**
+ * This class is a hierarchical timer wheel, used to expire stale quotes and edges:
+ * - Each level has 64 slots, and each slot of a level spans 64 slots of the level below
+ * - Timers are placed in the lowest level whose span covers their deadline, and cascade down as time advances
+ * - Scheduling and cancelling are O(1), and advancing costs O(expired timers) plus O(ticks passed)
+ * Expired timers are handed to a listener in one batch per advance
+ * @author Tamati Rudd 18045626
+ */
+public class TimerWheel {
+    protected static final int SLOT_BITS = 6;
+    protected static final int SLOTS = 1 << SLOT_BITS;
+    protected static final int SLOT_MASK = SLOTS - 1;
+    protected int levels;
+    protected long resolution; //time units per tick
+    protected long currentTick;
+    protected Timer[][] slots; //slots[level][slot] is the head of a linked list of timers
+    protected int size;
+    protected Timer[] batch; //expired timers delivered by the current advance
+    
+    /**
+     * Construct a new timer wheel with 4 levels (64^4 ticks before timers wait in the top level)
+     * @param startTime the current time, in the caller's time units (e.g. milliseconds)
+     * @param resolution the time units per tick
+     */
+    public TimerWheel(long startTime, long resolution) {
+        this(startTime, resolution, 4);
+    }
+    
+    /**
+     * Construct a new timer wheel
+     * @param startTime the current time, in the caller's time units (e.g. milliseconds)
+     * @param resolution the time units per tick
+     * @param levels the number of levels
+     */
+    public TimerWheel(long startTime, long resolution, int levels) {
+        if (resolution <= 0 || levels <= 0 || levels * SLOT_BITS >= 62) {
+            throw new IllegalArgumentException("invalid resolution or levels");
+        }
+        this.levels = levels;
+        this.resolution = resolution;
+        this.currentTick = startTime / resolution;
+        this.slots = new Timer[levels][SLOTS];
+        this.size = 0;
+        this.batch = new Timer[16];
+    }
+    
+    /**
+     * Schedule a timer, or reschedule it if already scheduled
+     * A deadline that has already passed expires on the next tick
+     * @param timer the timer
+     * @param deadline the time the timer expires, in the caller's time units
+     */
+    public void schedule(Timer timer, long deadline) {
+        if (timer.wheel != null) {
+            if (timer.wheel != this) {
+                throw new IllegalArgumentException("timer is scheduled on another wheel");
+            }
+            unlink(timer);
+        } else {
+            timer.wheel = this;
+            size++;
+        }
+        timer.deadlineTick = Math.max(deadline / resolution, currentTick + 1);
+        place(timer);
+    }
+    
+    /**
+     * Cancel a timer
+     * @param timer the timer
+     * @return true if the timer was scheduled on this wheel
+     */
+    public boolean cancel(Timer timer) {
+        if (timer.wheel != this) {
+            return false;
+        }
+        unlink(timer);
+        timer.wheel = null;
+        size--;
+        return true;
+    }
+    
+    /**
+     * Advance the wheel to the current time, expiring every timer whose deadline has passed
+     * @param now the current time, in the caller's time units
+     * @param listener receives the expired timers in one batch, if any expired
+     * @return the number of timers expired
+     */
+    public int advance(long now, ExpiryListener listener) {
+        long targetTick = now / resolution;
+        int expired = 0;
+        while (currentTick < targetTick) {
+            if (size == 0) { //Nothing to expire or cascade, so jump straight to the target
+                currentTick = targetTick;
+                break;
+            }
+            currentTick++;
+            //Cascade from the highest level whose slot boundary has been reached down to level 1
+            int cascadeLevel = 0;
+            while (cascadeLevel + 1 < levels && (currentTick & ((1L << ((cascadeLevel + 1) * SLOT_BITS)) - 1)) == 0) {
+                cascadeLevel++;
+            }
+            for (int level = cascadeLevel; level >= 1; level--) {
+                int slot = (int) ((currentTick >>> (level * SLOT_BITS)) & SLOT_MASK);
+                Timer timer = slots[level][slot];
+                slots[level][slot] = null;
+                while (timer != null) {
+                    Timer next = timer.next;
+                    timer.previous = null;
+                    timer.next = null;
+                    place(timer);
+                    timer = next;
+                }
+            }
+            //Expire the timers in the level 0 slot for this tick
+            int slot = (int) (currentTick & SLOT_MASK);
+            Timer timer = slots[0][slot];
+            slots[0][slot] = null;
+            while (timer != null) {
+                Timer next = timer.next;
+                timer.previous = null;
+                timer.next = null;
+                timer.wheel = null;
+                size--;
+                if (expired == batch.length) {
+                    batch = Arrays.copyOf(batch, 2 * expired);
+                }
+                batch[expired++] = timer;
+                timer = next;
+            }
+        }
+        if (expired > 0) {
+            listener.timersExpired(batch, expired);
+            Arrays.fill(batch, 0, expired, null);
+        }
+        return expired;
+    }
+    
+    /**
+     * Place a timer in the lowest level whose span covers its deadline
+     * @param timer the timer
+     */
+    protected void place(Timer timer) {
+        long delta = timer.deadlineTick - currentTick;
+        int level = 0;
+        while (level + 1 < levels && delta >= (1L << ((level + 1) * SLOT_BITS))) {
+            level++;
+        }
+        //Timers beyond the top level's span wait in its furthest slot, and are placed again when it cascades
+        long tick = Math.min(timer.deadlineTick, currentTick + (1L << (levels * SLOT_BITS)) - 1);
+        int slot = (int) ((tick >>> (level * SLOT_BITS)) & SLOT_MASK);
+        timer.level = level;
+        timer.slot = slot;
+        timer.previous = null;
+        timer.next = slots[level][slot];
+        if (timer.next != null) {
+            timer.next.previous = timer;
+        }
+        slots[level][slot] = timer;
+    }
+    
+    /**
+     * Remove a timer from its slot list
+     * @param timer the timer
+     */
+    protected void unlink(Timer timer) {
+        if (timer.previous != null) {
+            timer.previous.next = timer.next;
+        } else {
+            slots[timer.level][timer.slot] = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.previous = timer.previous;
+        }
+        timer.previous = null;
+        timer.next = null;
+    }
+    
+    /**
+     * @return the number of scheduled timers
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * @return the current time of the wheel, rounded down to a tick, in the caller's time units
+     */
+    public long currentTime() {
+        return currentTick * resolution;
+    }
+    
+    /**
+     * A timer that can be scheduled on one wheel at a time, and reused after it expires or is cancelled
+     */
+    public static class Timer {
+        protected long key;
+        protected Object payload;
+        protected TimerWheel wheel; //the wheel the timer is scheduled on, or null
+        protected long deadlineTick;
+        protected int level, slot;
+        protected Timer previous, next;
+        
+        /**
+         * Construct a new timer
+         * @param key a key identifying what expires (e.g. an encoded venue and currency pair)
+         * @param payload an object identifying what expires (e.g. a graph edge), or null
+         */
+        public Timer(long key, Object payload) {
+            this.key = key;
+            this.payload = payload;
+        }
+        
+        public long getKey() {
+            return key;
+        }
+        
+        public Object getPayload() {
+            return payload;
+        }
+        
+        public boolean isScheduled() {
+            return wheel != null;
+        }
+    }
+    
+    /**
+     * Receives the timers expired by one advance of the wheel
+     */
+    public interface ExpiryListener {
+        
+        /**
+         * @param expired the expired timers, which are no longer scheduled
+         * @param count the number of expired timers (the array may be longer)
+         */
+        public void timersExpired(Timer[] expired, int count);
+    }
+}
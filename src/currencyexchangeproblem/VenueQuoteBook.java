@@ -0,0 +1,388 @@
+package currencyexchangeproblem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class:
+ * - Keeps the exchange rate quoted by each venue for each directed currency pair
+ * - Maintains the best (highest) quote for each pair incrementally, using a small max-heap per pair
+ * - Exposes the collapsed view (one best rate per pair) as a RateMatrix
+ * Solvers built from the collapsed view see one edge per quoted pair, however many venues quote it
+ * Quotes can be given an expiry time, in which case a TimerWheel removes them in batches once stale
+ * @author Tamati Rudd 18045626
+ */
+public class VenueQuoteBook {
+    protected int n;
+    protected PairQuotes[][] pairs; //pairs[i][j] holds the quotes for i to j, rows allocated when first quoted
+    protected RateMatrix bestRates; //the collapsed view
+    protected int quoteCount;
+    protected int pairCount;
+    protected TimerWheel expiryWheel; //wheel for quotes with an expiry time, or null
+    protected ArrayList<ExpiryListener> expiryListeners;
+    protected int expiredCount; //quotes removed by the current expiry batch
+    private final TimerWheel.ExpiryListener expiryHandler = this::removeExpired;
+    
+    /**
+     * Construct a new, empty venue quote book
+     * @param n the number of currencies
+     */
+    public VenueQuoteBook(int n) {
+        this(new RateMatrix(n));
+    }
+    
+    /**
+     * Construct a new, empty venue quote book which writes best rates into an existing rate matrix
+     * @param bestRates the rate matrix to hold the collapsed view
+     */
+    public VenueQuoteBook(RateMatrix bestRates) {
+        this(bestRates, null);
+    }
+    
+    /**
+     * Construct a new, empty venue quote book whose quotes can expire
+     * @param bestRates the rate matrix to hold the collapsed view
+     * @param expiryWheel the timer wheel used to expire quotes, or null if quotes never expire
+     */
+    public VenueQuoteBook(RateMatrix bestRates, TimerWheel expiryWheel) {
+        this.n = bestRates.size();
+        this.pairs = new PairQuotes[n][];
+        this.bestRates = bestRates;
+        this.expiryWheel = expiryWheel;
+        this.expiryListeners = new ArrayList<>();
+        quoteCount = 0;
+        pairCount = 0;
+    }
+    
+    /**
+     * Add or update a venue's quote for a currency pair
+     * The collapsed view is only updated if the best rate for the pair changes
+     * @param venue the venue id
+     * @param from the from currency (table row)
+     * @param to the to currency (table column)
+     * @param rate the quoted exchange rate (0 or less removes the quote)
+     * @throws IllegalArgumentException if the rate is NaN or infinite
+     */
+    public void quote(int venue, int from, int to, double rate) {
+        quote(venue, from, to, rate, Long.MAX_VALUE);
+    }
+    
+    /**
+     * Add or update a venue's quote for a currency pair, which is removed once it expires
+     * Requoting a pair replaces the old expiry time
+     * Quotes from a currency to itself are ignored, as the diagonal never has an edge
+     * @param venue the venue id
+     * @param from the from currency (table row)
+     * @param to the to currency (table column)
+     * @param rate the quoted exchange rate (0 or less removes the quote)
+     * @param expiresAt the time the quote expires in the wheel's time units, or Long.MAX_VALUE for never
+     * @throws IllegalArgumentException if the rate is NaN or infinite
+     */
+    public void quote(int venue, int from, int to, double rate, long expiresAt) {
+        if (expiresAt != Long.MAX_VALUE && expiryWheel == null) {
+            throw new IllegalStateException("quote book has no expiry wheel");
+        }
+        //NaN fails every comparison, so would break the ordering of the pair's heap
+        if (Double.isNaN(rate) || Double.isInfinite(rate)) {
+            throw new IllegalArgumentException("invalid rate " + rate + " quoted by venue " + venue);
+        }
+        if (from == to) {
+            return;
+        }
+        if (rate <= 0) {
+            removeQuote(venue, from, to);
+            return;
+        }
+        if (pairs[from] == null) {
+            pairs[from] = new PairQuotes[n];
+        }
+        PairQuotes quotes = pairs[from][to];
+        if (quotes == null) {
+            quotes = new PairQuotes();
+            pairs[from][to] = quotes;
+        }
+        if (quotes.size == 0) {
+            pairCount++;
+        }
+        int position = quotes.put(venue, rate);
+        if (position < 0) {
+            quoteCount++;
+            position = -position - 1;
+        }
+        TimerWheel.Timer timer = quotes.timers[position];
+        if (expiresAt != Long.MAX_VALUE) {
+            if (timer == null) {
+                timer = new TimerWheel.Timer(((long) venue << 32) | (from * n + to), null);
+                quotes.timers[position] = timer;
+            }
+            expiryWheel.schedule(timer, expiresAt);
+        } else if (timer != null) {
+            expiryWheel.cancel(timer);
+        }
+        bestRates.setRate(from, to, quotes.bestRate());
+    }
+    
+    /**
+     * Remove a venue's quote for a currency pair
+     * @param venue the venue id
+     * @param from the from currency (table row)
+     * @param to the to currency (table column)
+     * @return true if the venue had a quote for the pair
+     */
+    public boolean removeQuote(int venue, int from, int to) {
+        PairQuotes quotes = (pairs[from] == null) ? null : pairs[from][to];
+        TimerWheel.Timer timer = (quotes == null) ? null : quotes.remove(venue);
+        if (timer == null) {
+            return false;
+        }
+        if (timer != PairQuotes.NO_TIMER) {
+            expiryWheel.cancel(timer);
+        }
+        quoteCount--;
+        if (quotes.size == 0) {
+            pairCount--;
+            bestRates.setRate(from, to, 0);
+        } else {
+            bestRates.setRate(from, to, quotes.bestRate());
+        }
+        return true;
+    }
+    
+    /**
+     * Remove every quote that has expired by the current time, in one batch
+     * The best rates of affected pairs are updated (marking them dirty), then expiry listeners are notified
+     * @param now the current time, in the wheel's time units
+     * @return the number of quotes removed
+     */
+    public int expireQuotes(long now) {
+        if (expiryWheel == null) {
+            return 0;
+        }
+        expiredCount = 0;
+        expiryWheel.advance(now, expiryHandler);
+        if (expiredCount > 0) {
+            for (ExpiryListener listener : expiryListeners) {
+                listener.quotesExpired(this, expiredCount);
+            }
+        }
+        return expiredCount;
+    }
+    
+    /**
+     * Remove the quotes for a batch of expired timers
+     * @param expired the expired timers
+     * @param count the number of expired timers
+     */
+    protected void removeExpired(TimerWheel.Timer[] expired, int count) {
+        for (int k = 0; k < count; k++) {
+            long key = expired[k].getKey();
+            int venue = (int) (key >>> 32);
+            int cell = (int) key;
+            //The timer is no longer scheduled, so remove the quote without cancelling it
+            PairQuotes quotes = pairs[cell / n][cell % n];
+            int position = quotes.positionOf(venue);
+            if (position >= 0 && quotes.timers[position] == expired[k]) {
+                quotes.timers[position] = null;
+                removeQuote(venue, cell / n, cell % n);
+                expiredCount++;
+            }
+        }
+    }
+    
+    /**
+     * Add a listener notified after each batch of quotes expires, e.g. to rerun finders on the dirty cells
+     * @param listener the listener
+     */
+    public void addExpiryListener(ExpiryListener listener) {
+        expiryListeners.add(listener);
+    }
+    
+    /**
+     * @param from the from currency (table row)
+     * @param to the to currency (table column)
+     * @return the best quoted rate for the pair, or 0 if no venue quotes it
+     */
+    public double bestRate(int from, int to) {
+        return bestRates.rate(from, to);
+    }
+    
+    /**
+     * @param from the from currency (table row)
+     * @param to the to currency (table column)
+     * @return the venue quoting the best rate for the pair, or -1 if no venue quotes it
+     */
+    public int bestVenue(int from, int to) {
+        PairQuotes quotes = (pairs[from] == null) ? null : pairs[from][to];
+        return (quotes == null || quotes.size == 0) ? -1 : quotes.venues[0];
+    }
+    
+    /**
+     * @param venue the venue id
+     * @param from the from currency (table row)
+     * @param to the to currency (table column)
+     * @return the venue's quoted rate for the pair, or 0 if it has none
+     */
+    public double venueRate(int venue, int from, int to) {
+        PairQuotes quotes = (pairs[from] == null) ? null : pairs[from][to];
+        if (quotes == null) {
+            return 0;
+        }
+        int position = quotes.positionOf(venue);
+        return (position < 0) ? 0 : quotes.rates[position];
+    }
+    
+    /**
+     * @return the collapsed view: the best rate (and its weight) for each pair
+     */
+    public RateMatrix getBestRates() {
+        return bestRates;
+    }
+    
+    /**
+     * @return the number of venue quotes held
+     */
+    public int quoteCount() {
+        return quoteCount;
+    }
+    
+    /**
+     * @return the number of pairs quoted by at least one venue (edges in the collapsed view)
+     */
+    public int pairCount() {
+        return pairCount;
+    }
+    
+    /**
+     * The quotes for one directed currency pair, as a max-heap on rate
+     * Pairs are quoted by few venues, so a venue's heap position is found by a linear scan
+     */
+    protected static class PairQuotes {
+        protected static final TimerWheel.Timer NO_TIMER = new TimerWheel.Timer(-1, null);
+        protected int[] venues = new int[4];
+        protected double[] rates = new double[4];
+        protected TimerWheel.Timer[] timers = new TimerWheel.Timer[4]; //expiry timer of each quote, or null
+        protected int size = 0;
+        
+        /**
+         * @return the best (highest) rate
+         */
+        protected double bestRate() {
+            return rates[0];
+        }
+        
+        /**
+         * @param venue the venue id
+         * @return the heap position of the venue's quote, or -1 if it has none
+         */
+        protected int positionOf(int venue) {
+            for (int k = 0; k < size; k++) {
+                if (venues[k] == venue) {
+                    return k;
+                }
+            }
+            return -1;
+        }
+        
+        /**
+         * Add or update a venue's quote
+         * @param venue the venue id
+         * @param rate the quoted rate
+         * @return the new heap position of the quote if the venue had one before, otherwise -(position + 1)
+         */
+        protected int put(int venue, double rate) {
+            int position = positionOf(venue);
+            if (position >= 0) {
+                double old = rates[position];
+                rates[position] = rate;
+                return (rate > old) ? siftUp(position) : siftDown(position);
+            }
+            if (size == venues.length) {
+                venues = Arrays.copyOf(venues, 2 * size);
+                rates = Arrays.copyOf(rates, 2 * size);
+                timers = Arrays.copyOf(timers, 2 * size);
+            }
+            venues[size] = venue;
+            rates[size] = rate;
+            timers[size] = null;
+            return -siftUp(size++) - 1;
+        }
+        
+        /**
+         * Remove a venue's quote
+         * @param venue the venue id
+         * @return the quote's expiry timer, NO_TIMER if it had none, or null if the venue had no quote
+         */
+        protected TimerWheel.Timer remove(int venue) {
+            int position = positionOf(venue);
+            if (position < 0) {
+                return null;
+            }
+            TimerWheel.Timer timer = (timers[position] == null) ? NO_TIMER : timers[position];
+            size--;
+            if (position < size) {
+                //Move the last quote into the gap, then restore the heap order
+                venues[position] = venues[size];
+                rates[position] = rates[size];
+                timers[position] = timers[size];
+                siftDown(siftUp(position));
+            }
+            timers[size] = null;
+            return timer;
+        }
+        
+        private int siftUp(int position) {
+            while (position > 0) {
+                int parent = (position - 1) / 2;
+                if (rates[parent] >= rates[position]) {
+                    return position;
+                }
+                swap(parent, position);
+                position = parent;
+            }
+            return position;
+        }
+        
+        private int siftDown(int position) {
+            while (true) {
+                int largest = position;
+                int left = 2 * position + 1;
+                int right = left + 1;
+                if (left < size && rates[left] > rates[largest]) {
+                    largest = left;
+                }
+                if (right < size && rates[right] > rates[largest]) {
+                    largest = right;
+                }
+                if (largest == position) {
+                    return position;
+                }
+                swap(largest, position);
+                position = largest;
+            }
+        }
+        
+        private void swap(int a, int b) {
+            int venue = venues[a];
+            venues[a] = venues[b];
+            venues[b] = venue;
+            double rate = rates[a];
+            rates[a] = rates[b];
+            rates[b] = rate;
+            TimerWheel.Timer timer = timers[a];
+            timers[a] = timers[b];
+            timers[b] = timer;
+        }
+    }
+    
+    /**
+     * Notified after each batch of quotes expires
+     */
+    public interface ExpiryListener {
+        
+        /**
+         * @param book the quote book, whose best rates have been updated and marked dirty
+         * @param expiredCount the number of quotes removed
+         */
+        public void quotesExpired(VenueQuoteBook book, int expiredCount);
+    }
+}
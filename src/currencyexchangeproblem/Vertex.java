@@ -21,4 +21,9 @@ public interface Vertex<E>
    public Set<Vertex<E>> adjacentVertices();
    // returns whether specified vertex is adjacent to this vertex
    public boolean isAdjacent(Vertex<?> vertex);
+   // returns the number of edges connecting with this vertex
+   public int degree();
+   // returns the connecting edge at the specified index from 0 to
+   // degree()-1, so edges can be traversed without an iterator
+   public Edge<E> incidentEdgeAt(int index);
 }
@@ -0,0 +1,327 @@
+package currencyexchangeproblem;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class relabels vertices so that related currencies get nearby indexes, for better cache use by the solvers:
+ * - BFS numbers vertices in breadth-first order, so neighbours are close together
+ * - REVERSE_CUTHILL_MCKEE is BFS visiting neighbours by increasing degree, then reversed; each component is
+ *   started from the least-connected unvisited vertex of the whole graph, taking vertices in ascending degree order.
+ *   It keeps the weights matrix close to its diagonal (small bandwidth), which suits Floyd-Warshall tiles
+ * - DEGREE numbers the most connected vertices first, so the currencies most edges touch share cache lines
+ * Orderings treat edges as undirected. The mapping is kept both ways, and can be applied to edge lists
+ * (which are also sorted by start vertex, as Bellman-Ford scans them), weight matrices and weighted graphs
+ * @author Tamati Rudd 18045626
+ */
+public class VertexOrdering {
+    public enum Strategy { BFS, REVERSE_CUTHILL_MCKEE, DEGREE }
+    protected final int[] newToOld; //the old index of each new index, i.e. the order
+    protected final int[] oldToNew; //the new index of each old index
+
+    /**
+     * Construct a vertex ordering from an order
+     * @param order the old index of each new index (a permutation of 0 to n - 1)
+     */
+    public VertexOrdering(int[] order) {
+        newToOld = order.clone();
+        oldToNew = new int[order.length];
+        Arrays.fill(oldToNew, -1);
+        for (int i = 0; i < order.length; i++) {
+            if (oldToNew[order[i]] != -1) {
+                throw new IllegalArgumentException("vertex " + order[i] + " appears twice in the order");
+            }
+            oldToNew[order[i]] = i;
+        }
+    }
+
+    /**
+     * Compute an ordering of vertices from their edges
+     * @param n the number of vertices
+     * @param edgeFrom index of the start vertex of each edge
+     * @param edgeTo index of the end vertex of each edge
+     * @param edgeCount the number of edges to use
+     * @param strategy how to order the vertices
+     * @return the ordering
+     */
+    public static VertexOrdering compute(int n, int[] edgeFrom, int[] edgeTo, int edgeCount, Strategy strategy) {
+        //Undirected adjacency in compressed rows, without self loops
+        int[] offsets = new int[n + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            if (edgeFrom[e] != edgeTo[e]) {
+                offsets[edgeFrom[e] + 1]++;
+                offsets[edgeTo[e] + 1]++;
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] neighbours = new int[offsets[n]];
+        int[] next = Arrays.copyOf(offsets, n);
+        for (int e = 0; e < edgeCount; e++) {
+            if (edgeFrom[e] != edgeTo[e]) {
+                neighbours[next[edgeFrom[e]]++] = edgeTo[e];
+                neighbours[next[edgeTo[e]]++] = edgeFrom[e];
+            }
+        }
+        int[] degrees = new int[n];
+        for (int v = 0; v < n; v++) {
+            degrees[v] = offsets[v + 1] - offsets[v];
+        }
+
+        int[] order;
+        if (strategy == Strategy.DEGREE) {
+            order = byDegree(degrees, true);
+        } else {
+            boolean cuthillMcKee = strategy == Strategy.REVERSE_CUTHILL_MCKEE;
+            if (cuthillMcKee) { //Visit neighbours by increasing degree
+                for (int v = 0; v < n; v++) {
+                    sortByDegree(neighbours, offsets[v], offsets[v + 1], degrees);
+                }
+            }
+            order = breadthFirst(n, offsets, neighbours, cuthillMcKee ? byDegree(degrees, false) : identity(n));
+            if (cuthillMcKee) {
+                for (int low = 0, high = n - 1; low < high; low++, high--) {
+                    int v = order[low];
+                    order[low] = order[high];
+                    order[high] = v;
+                }
+            }
+        }
+        return new VertexOrdering(order);
+    }
+
+    /**
+     * Compute an ordering of the vertices of a graph, by their index in it
+     * @param graph the graph
+     * @param strategy how to order the vertices
+     * @return the ordering
+     */
+    public static VertexOrdering compute(GraphADT<?> graph, Strategy strategy) {
+        int edgeCount = graph.edgeCount();
+        int[] edgeFrom = new int[edgeCount], edgeTo = new int[edgeCount];
+        for (int e = 0; e < edgeCount; e++) {
+            Edge<?> edge = graph.edgeAt(e);
+            edgeFrom[e] = graph.indexOf(edge.endVertex(0));
+            edgeTo[e] = graph.indexOf(edge.endVertex(1));
+        }
+        return compute(graph.vertexCount(), edgeFrom, edgeTo, edgeCount, strategy);
+    }
+
+    /**
+     * BFS through every component, starting each from the first unvisited vertex in start order
+     */
+    private static int[] breadthFirst(int n, int[] offsets, int[] neighbours, int[] startOrder) {
+        int[] order = new int[n];
+        boolean[] visited = new boolean[n];
+        int tail = 0;
+        for (int start : startOrder) {
+            if (visited[start]) {
+                continue;
+            }
+            visited[start] = true;
+            int head = tail;
+            order[tail++] = start;
+            while (head < tail) {
+                int u = order[head++];
+                for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+                    int v = neighbours[k];
+                    if (!visited[v]) {
+                        visited[v] = true;
+                        order[tail++] = v;
+                    }
+                }
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Order vertices by degree with a counting sort, keeping index order between equal degrees
+     */
+    private static int[] byDegree(int[] degrees, boolean descending) {
+        int n = degrees.length;
+        int maxDegree = 0;
+        for (int degree : degrees) {
+            maxDegree = Math.max(maxDegree, degree);
+        }
+        int[] starts = new int[maxDegree + 2];
+        for (int degree : degrees) {
+            starts[(descending ? maxDegree - degree : degree) + 1]++;
+        }
+        for (int d = 0; d <= maxDegree; d++) {
+            starts[d + 1] += starts[d];
+        }
+        int[] order = new int[n];
+        for (int v = 0; v < n; v++) {
+            order[starts[descending ? maxDegree - degrees[v] : degrees[v]]++] = v;
+        }
+        return order;
+    }
+
+    /**
+     * Insertion sort part of an adjacency row by degree (rows are short in sparse graphs)
+     */
+    private static void sortByDegree(int[] values, int from, int to, int[] degrees) {
+        for (int i = from + 1; i < to; i++) {
+            int v = values[i];
+            int k = i - 1;
+            while (k >= from && degrees[values[k]] > degrees[v]) {
+                values[k + 1] = values[k];
+                k--;
+            }
+            values[k + 1] = v;
+        }
+    }
+
+    private static int[] identity(int n) {
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        return order;
+    }
+
+    /**
+     * @param oldIndex a vertex index before relabelling
+     * @return its index after
+     */
+    public int newIndex(int oldIndex) {
+        return oldToNew[oldIndex];
+    }
+
+    /**
+     * @param newIndex a vertex index after relabelling
+     * @return its index before
+     */
+    public int oldIndex(int newIndex) {
+        return newToOld[newIndex];
+    }
+
+    /**
+     * @return the number of vertices
+     */
+    public int size() {
+        return newToOld.length;
+    }
+
+    /**
+     * Relabel an edge list in place, and sort it by new start vertex (then end vertex) for sequential scans
+     * @param edgeFrom index of the start vertex of each edge
+     * @param edgeTo index of the end vertex of each edge
+     * @param edgeWeights weight of each edge
+     * @param edgeCount the number of edges
+     */
+    public void relabelEdges(int[] edgeFrom, int[] edgeTo, double[] edgeWeights, int edgeCount) {
+        int n = size();
+        int[] from = new int[edgeCount], to = new int[edgeCount];
+        double[] weights = new double[edgeCount];
+        //Two counting sort passes: by end vertex, then stably by start vertex
+        int[] starts = new int[n + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            starts[oldToNew[edgeTo[e]] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            starts[v + 1] += starts[v];
+        }
+        for (int e = 0; e < edgeCount; e++) {
+            int k = starts[oldToNew[edgeTo[e]]]++;
+            from[k] = oldToNew[edgeFrom[e]];
+            to[k] = oldToNew[edgeTo[e]];
+            weights[k] = edgeWeights[e];
+        }
+        Arrays.fill(starts, 0);
+        for (int e = 0; e < edgeCount; e++) {
+            starts[from[e] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            starts[v + 1] += starts[v];
+        }
+        for (int e = 0; e < edgeCount; e++) {
+            int k = starts[from[e]]++;
+            edgeFrom[k] = from[e];
+            edgeTo[k] = to[e];
+            edgeWeights[k] = weights[e];
+        }
+    }
+
+    /**
+     * Relabel the rows and columns of a square matrix (e.g. a weights table)
+     * @param matrix the matrix, indexed by old index
+     * @return a new matrix, indexed by new index
+     */
+    public double[][] relabel(double[][] matrix) {
+        int n = size();
+        double[][] relabelled = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            double[] oldRow = matrix[newToOld[i]];
+            double[] row = relabelled[i];
+            for (int j = 0; j < n; j++) {
+                row[j] = oldRow[newToOld[j]];
+            }
+        }
+        return relabelled;
+    }
+
+    /**
+     * Relabel an array of values held by each vertex (e.g. the elements of a weights table)
+     * @param values the values, indexed by old index
+     * @return a copy, indexed by new index
+     */
+    public <E> E[] relabel(E[] values) {
+        E[] relabelled = values.clone();
+        for (int i = 0; i < size(); i++) {
+            relabelled[i] = values[newToOld[i]];
+        }
+        return relabelled;
+    }
+
+    /**
+     * Build a weighted graph from a weights table in the new order, so its vertex and edge arrays are laid out by it
+     * @param elements the element of each vertex, by old index
+     * @param weightsTable the weights table, by old index
+     * @return the weighted graph, indexed by new index
+     */
+    public <E> WeightedGraph<E> relabel(E[] elements, double[][] weightsTable) {
+        return WeightedGraphBuilder.fromMatrix(relabel(elements), relabel(weightsTable));
+    }
+
+    /**
+     * Copy a weighted graph with its vertices and edges added in the new order, so its vertex indexes are the new
+     * indexes and its edges are sorted by new start vertex, as relabelEdges orders them
+     * @param graph the graph, whose vertex indexes are the old indexes
+     * @param weights map of the graph's edges to weights
+     * @return the relabelled copy, with the weights of its own edges and its edge arrays
+     * @throws IllegalArgumentException if an edge of the graph has no weight
+     */
+    public <E> WeightedGraph<E> relabel(GraphADT<E> graph, Map<Edge<E>, Double> weights) {
+        int n = size();
+        int edgeCount = graph.edgeCount();
+        AdjacencyListGraph<E> relabelled = new AdjacencyListGraph<>(graph.getType(), n, edgeCount);
+        Map<E, Vertex<E>> vertexIndex = new HashMap<>(n * 4 / 3 + 1);
+        for (int i = 0; i < n; i++) {
+            E element = graph.vertexAt(newToOld[i]).getUserObject();
+            vertexIndex.put(element, relabelled.addVertex(element));
+        }
+        int[] edgeFrom = new int[edgeCount], edgeTo = new int[edgeCount];
+        double[] edgeWeights = new double[edgeCount];
+        for (int e = 0; e < edgeCount; e++) {
+            Edge<E> edge = graph.edgeAt(e);
+            Double weight = weights.get(edge);
+            if (weight == null) {
+                throw new IllegalArgumentException("edge " + edge + " has no weight");
+            }
+            edgeFrom[e] = graph.indexOf(edge.endVertex(0));
+            edgeTo[e] = graph.indexOf(edge.endVertex(1));
+            edgeWeights[e] = weight;
+        }
+        relabelEdges(edgeFrom, edgeTo, edgeWeights, edgeCount);
+        Map<Edge<E>, Double> relabelledWeights = new HashMap<>(edgeCount * 4 / 3 + 1);
+        for (int e = 0; e < edgeCount; e++) {
+            Edge<E> edge = relabelled.addEdge(relabelled.vertexAt(edgeFrom[e]), relabelled.vertexAt(edgeTo[e]));
+            relabelledWeights.put(edge, edgeWeights[e]);
+        }
+        return new WeightedGraph<>(relabelled, relabelledWeights, vertexIndex, edgeFrom, edgeTo, edgeWeights);
+    }
+}
@@ -0,0 +1,77 @@
+package currencyexchangeproblem;
+
+/**
+ * This interface defines an n x n table of graph edge weights, read one cell at a time
+ * Weights are ln(1 / rate), and Double.POSITIVE_INFINITY means there is no exchange (no edge)
+ * A table written concurrently (e.g. a SharedRateMatrix) overrides beginRead and validate, so readers of many cells
+ * can tell whether their reads were consistent with each other
+ * @author Tamati Rudd 18045626
+ */
+public interface WeightTable {
+    
+    /**
+     * @return the number of currencies (rows and columns) in the table
+     */
+    public int size();
+    
+    /**
+     * @param i table row (from currency)
+     * @param j table column (to currency)
+     * @return the weight of the edge from currency i to currency j
+     */
+    public double weight(int i, int j);
+    
+    /**
+     * Begin a read of cells that must be consistent with each other
+     * @return the version to pass to validate once the read is done (always 0 for a table not written concurrently)
+     */
+    public default long beginRead() {
+        return 0;
+    }
+    
+    /**
+     * Check that no write happened since beginRead
+     * @param version the version returned by beginRead
+     * @return true if the cells read since beginRead were consistent, false if the read must be retried
+     */
+    public default boolean validate(long version) {
+        return true;
+    }
+    
+    /**
+     * Copy the table into a new n x n matrix, retrying until the copy is consistent
+     * @return the copied weights
+     */
+    public default double[][] copyWeights() {
+        int n = size();
+        double[][] copy = new double[n][n];
+        long version;
+        do {
+            version = beginRead();
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    copy[i][j] = weight(i, j);
+                }
+            }
+        } while (!validate(version));
+        return copy;
+    }
+    
+    /**
+     * @param weights n x n table of weights
+     * @return a weight table reading the matrix in place
+     */
+    public static WeightTable of(double[][] weights) {
+        return new WeightTable() {
+            @Override
+            public int size() {
+                return weights.length;
+            }
+            
+            @Override
+            public double weight(int i, int j) {
+                return weights[i][j];
+            }
+        };
+    }
+}
@@ -0,0 +1,125 @@
+package currencyexchangeproblem;
+
+import java.util.Map;
+
+/**
+ * This class holds a graph built in bulk by WeightedGraphBuilder, together with:
+ * - A map of edges to weights, as used by BestConversionFinder
+ * - The end vertex indexes and weight of each edge as primitive arrays, indexed by graph edge index
+ * - An index from vertex elements to vertexes
+ * The primitive arrays describe the graph as built, so they should be rebuilt if edges are removed
+ * When built from arrays alone, the graph, weights map and vertex index are built on first use (not thread safe)
+ * @author Tamati Rudd 18045626
+ */
+public class WeightedGraph<E> {
+    protected E[] elements; //vertex elements by index, if the graph is built on first use
+    protected GraphADT<E> graph;
+    protected Map<Edge<E>, Double> weights;
+    protected Map<E, Vertex<E>> vertexIndex;
+    protected int[] edgeFrom; //index of the start vertex of each edge
+    protected int[] edgeTo; //index of the end vertex of each edge
+    protected double[] edgeWeights; //weight of each edge
+    
+    /**
+     * Construct a new weighted graph
+     * @param graph the graph
+     * @param weights map of edges to weights
+     * @param vertexIndex map of vertex elements to vertexes
+     * @param edgeFrom index of the start vertex of each edge
+     * @param edgeTo index of the end vertex of each edge
+     * @param edgeWeights weight of each edge
+     */
+    public WeightedGraph(GraphADT<E> graph, Map<Edge<E>, Double> weights, Map<E, Vertex<E>> vertexIndex,
+            int[] edgeFrom, int[] edgeTo, double[] edgeWeights) {
+        this.graph = graph;
+        this.weights = weights;
+        this.vertexIndex = vertexIndex;
+        this.edgeFrom = edgeFrom;
+        this.edgeTo = edgeTo;
+        this.edgeWeights = edgeWeights;
+    }
+    
+    /**
+     * Construct a new weighted graph from its edge arrays, building the graph on first use
+     * @param elements the vertex element of each vertex index
+     * @param edgeFrom index of the start vertex of each edge
+     * @param edgeTo index of the end vertex of each edge
+     * @param edgeWeights weight of each edge
+     */
+    public WeightedGraph(E[] elements, int[] edgeFrom, int[] edgeTo, double[] edgeWeights) {
+        this.elements = elements;
+        this.edgeFrom = edgeFrom;
+        this.edgeTo = edgeTo;
+        this.edgeWeights = edgeWeights;
+    }
+    
+    /**
+     * Build the graph, weights map and vertex index if they have not been built
+     */
+    private void ensureGraph() {
+        if (graph == null) {
+            WeightedGraphBuilder.buildGraph(this);
+        }
+    }
+    
+    /**
+     * @return the graph
+     */
+    public GraphADT<E> getGraph() {
+        ensureGraph();
+        return graph;
+    }
+    
+    /**
+     * @return the map of edges to weights
+     */
+    public Map<Edge<E>, Double> getWeights() {
+        ensureGraph();
+        return weights;
+    }
+    
+    /**
+     * Get the vertex holding an element in O(1)
+     * @param element the vertex element (e.g. a currency)
+     * @return the vertex, or null if no vertex holds the element
+     */
+    public Vertex<E> vertexFor(E element) {
+        ensureGraph();
+        return vertexIndex.get(element);
+    }
+    
+    /**
+     * @return the number of vertexes in the graph
+     */
+    public int vertexCount() {
+        return graph == null ? elements.length : graph.vertexCount();
+    }
+    
+    /**
+     * @return the number of edges in the graph
+     */
+    public int edgeCount() {
+        return edgeWeights.length;
+    }
+    
+    /**
+     * @return index of the start vertex of each edge
+     */
+    public int[] getEdgeFrom() {
+        return edgeFrom;
+    }
+    
+    /**
+     * @return index of the end vertex of each edge
+     */
+    public int[] getEdgeTo() {
+        return edgeTo;
+    }
+    
+    /**
+     * @return weight of each edge
+     */
+    public double[] getEdgeWeights() {
+        return edgeWeights;
+    }
+}
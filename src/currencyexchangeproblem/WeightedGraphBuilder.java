@@ -0,0 +1,101 @@
+package currencyexchangeproblem;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class builds a weighted graph in bulk from either:
+ * - An n x n table of weights, where infinite (or NaN) weights mean no edge (as produced by calculateWeights)
+ * - Sparse (row, column, weight) triplets
+ * Only the primitive edge arrays are built up front; the hash based graph and weights map are built the first time
+ * they are asked for (pre-sized, with O(1) vertex lookups by table index), so solvers that use the arrays never pay
+ * for them
+ * @author Tamati Rudd 18045626
+ */
+public class WeightedGraphBuilder {
+    
+    /**
+     * Build a directed weighted graph from an n x n table of weights
+     * @param elements the vertex element for each table row/column (e.g. currencies in table order)
+     * @param weightsTable n x n table of graph edge weights
+     * @return the weighted graph
+     */
+    public static <E> WeightedGraph<E> fromMatrix(E[] elements, double[][] weightsTable) {
+        //Count the edges so that the graph and weight storage can be sized exactly
+        int edgeCount = 0;
+        for (int i = 0; i < weightsTable.length; i++) {
+            for (int j = 0; j < weightsTable[i].length; j++) {
+                if (weightsTable[i][j] < Double.POSITIVE_INFINITY) { //NaN is no edge too
+                    edgeCount++;
+                }
+            }
+        }
+        
+        //Convert the table to triplets in row order
+        int[] rows = new int[edgeCount];
+        int[] columns = new int[edgeCount];
+        double[] weights = new double[edgeCount];
+        int e = 0;
+        for (int i = 0; i < weightsTable.length; i++) {
+            for (int j = 0; j < weightsTable[i].length; j++) {
+                if (weightsTable[i][j] < Double.POSITIVE_INFINITY) { //NaN is no edge too
+                    rows[e] = i;
+                    columns[e] = j;
+                    weights[e] = weightsTable[i][j];
+                    e++;
+                }
+            }
+        }
+        
+        return fromTriplets(elements, rows, columns, weights, edgeCount);
+    }
+    
+    /**
+     * Build a directed weighted graph from sparse (row, column, weight) triplets
+     * @param elements the vertex element for each row/column index (e.g. currencies in table order)
+     * @param rows index of the start vertex of each edge
+     * @param columns index of the end vertex of each edge
+     * @param weights weight of each edge
+     * @param count the number of triplets to use
+     * @return the weighted graph
+     */
+    public static <E> WeightedGraph<E> fromTriplets(E[] elements, int[] rows, int[] columns, double[] weights, int count) {
+        //Copy the triplets, so edge index e is triplet e
+        int[] edgeFrom = new int[count];
+        int[] edgeTo = new int[count];
+        double[] edgeWeights = new double[count];
+        System.arraycopy(rows, 0, edgeFrom, 0, count);
+        System.arraycopy(columns, 0, edgeTo, 0, count);
+        System.arraycopy(weights, 0, edgeWeights, 0, count);
+        return new WeightedGraph<>(elements.clone(), edgeFrom, edgeTo, edgeWeights);
+    }
+    
+    /**
+     * Build the hash based graph of a weighted graph's edge arrays
+     * @param weightedGraph the weighted graph, whose graph, weights map and vertex index are set
+     */
+    static <E> void buildGraph(WeightedGraph<E> weightedGraph) {
+        E[] elements = weightedGraph.elements;
+        int count = weightedGraph.edgeCount();
+        //Setup pre-sized data structures
+        GraphADT<E> graph = new AdjacencyListGraph<>(GraphADT.GraphType.DIRECTED, elements.length, count);
+        Map<Edge<E>, Double> weightsMap = new HashMap<>(count * 4 / 3 + 1);
+        Map<E, Vertex<E>> vertexIndex = new HashMap<>(elements.length * 4 / 3 + 1);
+        
+        //Create graph vertexes in table order, so vertex index i is table row/column i
+        for (E element : elements) {
+            vertexIndex.put(element, graph.addVertex(element));
+        }
+        
+        //Create graph edges, so edge index e is edge array index e
+        for (int e = 0; e < count; e++) {
+            Edge<E> newEdge = graph.addEdge(graph.vertexAt(weightedGraph.edgeFrom[e]),
+                    graph.vertexAt(weightedGraph.edgeTo[e]));
+            weightsMap.put(newEdge, weightedGraph.edgeWeights[e]);
+        }
+        
+        weightedGraph.graph = graph;
+        weightedGraph.weights = weightsMap;
+        weightedGraph.vertexIndex = vertexIndex;
+    }
+}